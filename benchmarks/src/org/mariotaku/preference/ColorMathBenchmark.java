@@ -0,0 +1,49 @@
+package org.mariotaku.preference;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Conversions between HSV and ARGB colors, over a fixed set of colors so
+ * every hue sector is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ColorMathBenchmark {
+
+	private static final int COLOR_COUNT = 1024;
+
+	private final int[] mColors = new int[COLOR_COUNT];
+	private final float[] mHues = new float[COLOR_COUNT];
+	private final float[] mHsv = new float[3];
+
+	private int mIndex;
+
+	@Setup
+	public void setup() {
+		for (int i = 0; i < COLOR_COUNT; i++) {
+			// Spread over the whole RGB cube.
+			mColors[i] = 0xff000000 | i * 0x3f1d27 & 0xffffff;
+			mHues[i] = 360f * i / COLOR_COUNT;
+		}
+	}
+
+	@Benchmark
+	public float[] argbToHsv() {
+		ColorMath.argbToHsv(mColors[mIndex++ & COLOR_COUNT - 1], mHsv);
+		return mHsv;
+	}
+
+	@Benchmark
+	public int hsvToArgb() {
+		return ColorMath.hsvToArgb(mHues[mIndex++ & COLOR_COUNT - 1], 0.75f, 0.5f, 0xff);
+	}
+}
@@ -0,0 +1,48 @@
+package org.mariotaku.preference;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mapping of touch points on the color picker panels, run once per touch
+ * sample. The points sweep across and beyond the panels so the clamping
+ * branches are measured too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ColorPanelMappingBenchmark {
+
+	private static final float LEFT = 10, TOP = 10, RIGHT = 522, BOTTOM = 522;
+
+	private final float[] mResult = new float[2];
+
+	private int mPoint;
+
+	@Benchmark
+	public int pointToAlpha() {
+		return ColorPanelMapping.pointToAlpha(nextPoint(), LEFT, RIGHT);
+	}
+
+	@Benchmark
+	public float pointToHue() {
+		return ColorPanelMapping.pointToHue(nextPoint(), TOP, BOTTOM);
+	}
+
+	@Benchmark
+	public float[] pointToSatVal() {
+		final int point = nextPoint();
+		ColorPanelMapping.pointToSatVal(point, BOTTOM - point, LEFT, TOP, RIGHT, BOTTOM, mResult);
+		return mResult;
+	}
+
+	private int nextPoint() {
+		return (mPoint++ & 0x3ff) - 256;
+	}
+}
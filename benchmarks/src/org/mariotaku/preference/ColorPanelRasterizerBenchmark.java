@@ -0,0 +1,59 @@
+package org.mariotaku.preference;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Pixel generation of the color picker panels and of the chessboard pattern
+ * drawn behind translucent colors, into preallocated buffers. One operation
+ * is one pixel, so the scores are in pixels per millisecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ColorPanelRasterizerBenchmark {
+
+	/**
+	 * Size of the panels, same as the saturation/value textures.
+	 */
+	private static final int SIZE = 256;
+
+	private final int[] mPixels = new int[SIZE * SIZE];
+	private float mHue;
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int[] renderAlphaStrip() {
+		ColorPanelRasterizer.renderAlphaStrip(0xff3399cc, mPixels, 0, SIZE);
+		return mPixels;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE * SIZE)
+	public int[] renderCheckerboard() {
+		ColorPanelRasterizer.renderCheckerboard(8, mPixels, 0, SIZE, SIZE, SIZE);
+		return mPixels;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int[] renderHueStrip() {
+		ColorPanelRasterizer.renderHueStrip(mPixels, 0, SIZE);
+		return mPixels;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE * SIZE)
+	public int[] renderSatVal() {
+		mHue = (mHue + 1) % 360;
+		ColorPanelRasterizer.renderSatVal(mHue, mPixels, 0, SIZE, SIZE, SIZE);
+		return mPixels;
+	}
+}
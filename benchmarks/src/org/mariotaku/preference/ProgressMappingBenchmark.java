@@ -0,0 +1,43 @@
+package org.mariotaku.preference;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mapping between {@code SeekBarPreference} and {@code TextSizePreference}
+ * values and seek bar progress, run once per progress change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProgressMappingBenchmark {
+
+	private int mProgress;
+
+	@Benchmark
+	public int seekBarFromProgress() {
+		return ProgressMapping.fromProgress(mProgress++ & 0xff, 10);
+	}
+
+	@Benchmark
+	public int seekBarToProgress() {
+		return ProgressMapping.toProgress(mProgress++ & 0xff, 10, 200);
+	}
+
+	@Benchmark
+	public float textSizeFromProgress() {
+		return ProgressMapping.fromProgress(mProgress++ & 0xff, 8f, ProgressMapping.TEXT_SIZE_STEPS);
+	}
+
+	@Benchmark
+	public int textSizeToProgress() {
+		return ProgressMapping.toProgress(8f + (mProgress++ & 0xff) * 0.1f, 8f, 32f,
+				ProgressMapping.TEXT_SIZE_STEPS);
+	}
+}
@@ -0,0 +1,108 @@
+package org.mariotaku.preference;
+
+import android.content.SharedPreferences;
+import android.preference.Preference;
+
+/**
+ * Storage and cached value of a preference of this library. The value is
+ * read from the storage once, then kept until it changes there, which
+ * {@link ValueCacheInvalidator} reports while the preference is attached.
+ * Int values are kept as they are, and float values as their bits.
+ * Must only be used from the UI thread.
+ */
+final class CachedPreferenceValue implements ValueCacheInvalidator.Callback {
+
+	private final Preference mPreference;
+	private PreferenceStorage mStorage;
+	private PreferenceStorage mObservedStorage;
+	private String mObservedKey;
+
+	/*
+	 * mBits is the stored value as long as mCached is set, and the last value
+	 * set otherwise.
+	 */
+	private int mBits;
+	private boolean mCached;
+
+	CachedPreferenceValue(Preference preference) {
+		mPreference = preference;
+	}
+
+	@Override
+	public void onValueInvalidated() {
+		mCached = false;
+	}
+
+	/**
+	 * @return the storage set, or else the SharedPreferences of the
+	 *         preference, or null if it isn't attached yet.
+	 */
+	PreferenceStorage getStorage() {
+		if (mStorage != null) return mStorage;
+		final SharedPreferences prefs = mPreference.getSharedPreferences();
+		return prefs != null ? SharedPreferencesStorage.get(prefs) : null;
+	}
+
+	float getFloat() {
+		return Float.intBitsToFloat(mBits);
+	}
+
+	int getInt() {
+		return mBits;
+	}
+
+	/**
+	 * @return true if the value is the stored one, false if it needs to be
+	 *         read from the storage again.
+	 */
+	boolean isCached() {
+		return mCached;
+	}
+
+	/**
+	 * Start observing the stored value, once the preference is attached or
+	 * its storage changed.
+	 */
+	void observe() {
+		stopObserving();
+		final PreferenceStorage storage = getStorage();
+		if (mPreference.hasKey() && storage != null) {
+			mObservedStorage = storage;
+			mObservedKey = mPreference.getKey();
+			ValueCacheInvalidator.register(mObservedStorage, mObservedKey, this);
+		}
+	}
+
+	/**
+	 * Set the value read from or written to the storage. It stays cached as
+	 * long as the stored value is observed.
+	 */
+	void setFloat(float value) {
+		setInt(Float.floatToRawIntBits(value));
+	}
+
+	/**
+	 * @see #setFloat(float)
+	 */
+	void setInt(int value) {
+		mBits = value;
+		mCached = mObservedStorage != null;
+	}
+
+	void setStorage(PreferenceStorage storage) {
+		mStorage = storage;
+		observe();
+	}
+
+	/**
+	 * Stop observing the stored value, when the preference is removed.
+	 */
+	void stopObserving() {
+		if (mObservedStorage != null) {
+			ValueCacheInvalidator.unregister(mObservedStorage, mObservedKey, this);
+			mObservedStorage = null;
+			mObservedKey = null;
+		}
+		mCached = false;
+	}
+}
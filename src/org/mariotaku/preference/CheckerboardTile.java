@@ -0,0 +1,66 @@
+package org.mariotaku.preference;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapShader;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Shader.TileMode;
+import android.util.SparseArray;
+
+/**
+ * Process-wide white and gray chessboard tiles. A tile holds 2x2 squares at
+ * their final size, and is repeated by a {@link BitmapShader} which is only
+ * ever translated, so the pattern keeps sharp edges even where the renderer
+ * filters bitmaps, and the memory used by the pattern doesn't depend on the
+ * size or number of areas it is drawn on.
+ */
+final class CheckerboardTile {
+
+	private static final SparseArray<Bitmap> sTiles = new SparseArray<Bitmap>();
+
+	private CheckerboardTile() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Create a paint drawing the chessboard pattern.
+	 *
+	 * @param cellSize size of the squares in pixels.
+	 */
+	static Paint createPaint(int cellSize) {
+		final Paint paint = new Paint();
+		paint.setShader(new BitmapShader(getTile(cellSize), TileMode.REPEAT, TileMode.REPEAT));
+		paint.setFilterBitmap(false);
+		return paint;
+	}
+
+	/**
+	 * Get the tile of a square size, built on first use.
+	 *
+	 * @param cellSize size of the squares in pixels.
+	 */
+	static synchronized Bitmap getTile(int cellSize) {
+		cellSize = Math.max(1, cellSize);
+		Bitmap tile = sTiles.get(cellSize);
+		if (tile == null) {
+			final int size = cellSize * 2;
+			final int[] pixels = new int[size * size];
+			ColorPanelRasterizer.renderCheckerboard(cellSize, pixels, 0, size, size, size);
+			tile = Bitmap.createBitmap(pixels, size, size, Config.ARGB_8888);
+			sTiles.put(cellSize, tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * Align the pattern of a paint created by {@link #createPaint(int)} so it
+	 * starts with a white square at the given position.
+	 *
+	 * @param matrix matrix owned by the caller, reused for every call.
+	 */
+	static void setOrigin(Paint paint, Matrix matrix, float left, float top) {
+		matrix.setTranslate(left, top);
+		paint.getShader().setLocalMatrix(matrix);
+	}
+}
@@ -0,0 +1,121 @@
+package org.mariotaku.preference;
+
+/**
+ * Allocation-free conversions between HSV and ARGB colors, written in plain
+ * Java. The results are the same, bit for bit, as
+ * {@code android.graphics.Color.HSVToColor} and
+ * {@code android.graphics.Color.RGBToHSV}, which follow Skia's
+ * {@code SkHSVToColor} and {@code SkRGBToHSV}.
+ */
+public final class ColorMath {
+
+	/**
+	 * Tolerance under which a saturation is treated as zero, same as Skia's
+	 * {@code SK_ScalarNearlyZero}.
+	 */
+	private static final float NEARLY_ZERO = 1f / (1 << 12);
+
+	private ColorMath() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Convert an ARGB color to its HSV components.
+	 *
+	 * @param argb the color, its alpha is ignored.
+	 * @param hsv array of at least 3 elements receiving hue in [0, 360),
+	 *            saturation and value in [0, 1].
+	 */
+	public static void argbToHsv(int argb, float[] hsv) {
+		final int r = argb >> 16 & 0xff, g = argb >> 8 & 0xff, b = argb & 0xff;
+		final int min = Math.min(r, Math.min(g, b));
+		final int max = Math.max(r, Math.max(g, b));
+		final int delta = max - min;
+		final float v = (float) max / 255;
+		if (delta == 0) {
+			// Shade of gray.
+			hsv[0] = 0;
+			hsv[1] = 0;
+			hsv[2] = v;
+			return;
+		}
+		final float s = (float) delta / max;
+		float h;
+		if (r == max) {
+			h = (float) (g - b) / delta;
+		} else if (g == max) {
+			h = 2 + (float) (b - r) / delta;
+		} else {
+			h = 4 + (float) (r - g) / delta;
+		}
+		h *= 60;
+		if (h < 0) {
+			h += 360;
+		}
+		hsv[0] = h;
+		hsv[1] = s;
+		hsv[2] = v;
+	}
+
+	/**
+	 * Convert HSV components to an ARGB color.
+	 *
+	 * @param h hue in degrees, values outside of [0, 360) are treated as 0.
+	 * @param s saturation, clamped to [0, 1].
+	 * @param v value, clamped to [0, 1].
+	 * @param a alpha of the color, in [0, 255].
+	 */
+	public static int hsvToArgb(float h, float s, float v, int a) {
+		s = s < 0 ? 0 : s > 1 ? 1 : s;
+		v = v < 0 ? 0 : v > 1 ? 1 : v;
+		final int vByte = round(v * 255);
+		if (Math.abs(s) <= NEARLY_ZERO) {
+			// Shade of gray.
+			return a << 24 | vByte << 16 | vByte << 8 | vByte;
+		}
+		final float hx = h < 0 || h >= 360 ? 0 : h / 60;
+		final float w = (float) Math.floor(hx);
+		final float f = hx - w;
+		final int p = round((1 - s) * v * 255);
+		final int q = round((1 - s * f) * v * 255);
+		final int t = round((1 - s * (1 - f)) * v * 255);
+		final int r, g, b;
+		switch ((int) w) {
+			case 0:
+				r = vByte;
+				g = t;
+				b = p;
+				break;
+			case 1:
+				r = q;
+				g = vByte;
+				b = p;
+				break;
+			case 2:
+				r = p;
+				g = vByte;
+				b = t;
+				break;
+			case 3:
+				r = p;
+				g = q;
+				b = vByte;
+				break;
+			case 4:
+				r = t;
+				g = p;
+				b = vByte;
+				break;
+			default:
+				r = vByte;
+				g = p;
+				b = q;
+				break;
+		}
+		return a << 24 | r << 16 | g << 8 | b;
+	}
+
+	private static int round(float x) {
+		return (int) Math.floor(x + 0.5f);
+	}
+}
@@ -0,0 +1,68 @@
+package org.mariotaku.preference;
+
+/**
+ * Mapping between points on the panels of the color picker and the hue,
+ * saturation, value and alpha they select. Kept free of framework classes so
+ * it can be exercised on a plain JVM.
+ */
+final class ColorPanelMapping {
+
+	private ColorPanelMapping() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * @return alpha selected by a point of the alpha panel, opaque on the left.
+	 */
+	static int pointToAlpha(int x, float left, float right) {
+		final int width = (int) (right - left);
+		if (x < left) {
+			x = 0;
+		} else if (x > right) {
+			x = width;
+		} else {
+			x = x - (int) left;
+		}
+		return 0xff - x * 0xff / width;
+	}
+
+	/**
+	 * @return hue selected by a point of the hue panel, 360 at the top.
+	 */
+	static float pointToHue(float y, float top, float bottom) {
+		final float height = bottom - top;
+		if (y < top) {
+			y = 0f;
+		} else if (y > bottom) {
+			y = height;
+		} else {
+			y = y - top;
+		}
+		return 360f - y * 360f / height;
+	}
+
+	/**
+	 * Convert a point of the saturation/value panel to saturation and value,
+	 * written to the first two elements of the given array.
+	 */
+	static void pointToSatVal(float x, float y, float left, float top, float right, float bottom, float[] result) {
+		final float width = right - left;
+		final float height = bottom - top;
+		if (x < left) {
+			x = 0f;
+		} else if (x > right) {
+			x = width;
+		} else {
+			x = x - left;
+		}
+		if (y < top) {
+			y = 0f;
+		} else if (y > bottom) {
+			y = height;
+		} else {
+			y = y - top;
+		}
+		result[0] = 1.f / width * x;
+		result[1] = 1.f - 1.f / height * y;
+	}
+}
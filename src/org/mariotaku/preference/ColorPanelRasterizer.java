@@ -0,0 +1,137 @@
+package org.mariotaku.preference;
+
+/**
+ * Renders the panels of the color picker into ARGB pixel buffers. This class
+ * doesn't depend on the Android framework, so rendering can be measured and
+ * checked on a plain JVM; {@link ColorPickerPreference} only uploads the
+ * buffers into bitmaps.
+ */
+final class ColorPanelRasterizer {
+
+	/**
+	 * Number of entries of the hue table, one per degree from 360 to 0.
+	 */
+	static final int HUE_TABLE_SIZE = 361;
+
+	/**
+	 * Color of the light squares of the chessboard pattern.
+	 */
+	static final int CHECKERBOARD_LIGHT = 0xffffffff;
+
+	/**
+	 * Color of the dark squares of the chessboard pattern.
+	 */
+	static final int CHECKERBOARD_DARK = 0xff888888;
+
+	private static volatile int[] sHueTable;
+
+	private ColorPanelRasterizer() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Get the process-wide hue table, holding the fully saturated and bright
+	 * color of every degree from 360 at index 0 to 0 at the last index. The
+	 * table is built on first use and must not be modified.
+	 */
+	static int[] getHueTable() {
+		int[] table = sHueTable;
+		if (table == null) {
+			table = new int[HUE_TABLE_SIZE];
+			for (int i = 0; i < HUE_TABLE_SIZE; i++) {
+				table[i] = ColorMath.hsvToArgb(HUE_TABLE_SIZE - 1 - i, 1f, 1f, 0xff);
+			}
+			sHueTable = table;
+		}
+		return table;
+	}
+
+	/**
+	 * Render a white and gray chessboard pattern starting with a white square
+	 * at the top left.
+	 *
+	 * @param cellSize size of the squares in pixels.
+	 * @param out buffer receiving the pixels.
+	 * @param offset index of the top left pixel in the buffer.
+	 * @param stride number of pixels between two rows in the buffer.
+	 * @param width width of the pattern in pixels.
+	 * @param height height of the pattern in pixels.
+	 */
+	static void renderCheckerboard(int cellSize, int[] out, int offset, int stride, int width, int height) {
+		for (int y = 0; y < height; y++) {
+			final int row = offset + y * stride;
+			final int rowParity = y / cellSize & 1;
+			for (int x = 0; x < width; x++) {
+				out[row + x] = (x / cellSize & 1) == rowParity ? CHECKERBOARD_LIGHT : CHECKERBOARD_DARK;
+			}
+		}
+	}
+
+	/**
+	 * Render the horizontal alpha strip of a color, from opaque on the left to
+	 * fully transparent on the right.
+	 *
+	 * @param rgb the color, its alpha is ignored.
+	 * @param out buffer receiving the pixels.
+	 * @param offset index of the first pixel in the buffer.
+	 * @param width number of pixels to render.
+	 */
+	static void renderAlphaStrip(int rgb, int[] out, int offset, int width) {
+		rgb &= 0x00ffffff;
+		final int last = Math.max(1, width - 1);
+		for (int x = 0; x < width; x++) {
+			final int alpha = 0xff - (0xff * x + last / 2) / last;
+			out[offset + x] = alpha << 24 | rgb;
+		}
+	}
+
+	/**
+	 * Render the vertical hue strip, from hue 360 at the top to hue 0 at the
+	 * bottom, one pixel per row.
+	 *
+	 * @param out buffer receiving the pixels.
+	 * @param offset index of the first pixel in the buffer.
+	 * @param height number of pixels to render.
+	 */
+	static void renderHueStrip(int[] out, int offset, int height) {
+		final int[] table = getHueTable();
+		if (height == table.length) {
+			System.arraycopy(table, 0, out, offset, height);
+			return;
+		}
+		final int last = Math.max(1, height - 1);
+		for (int y = 0; y < height; y++) {
+			out[offset + y] = table[(y * (table.length - 1) + last / 2) / last];
+		}
+	}
+
+	/**
+	 * Render the saturation/value plane of a hue. Saturation grows from left
+	 * to right and value from bottom to top.
+	 *
+	 * @param hue hue in degrees.
+	 * @param out buffer receiving the pixels.
+	 * @param offset index of the top left pixel in the buffer.
+	 * @param stride number of pixels between two rows in the buffer.
+	 * @param width width of the plane in pixels.
+	 * @param height height of the plane in pixels.
+	 */
+	static void renderSatVal(float hue, int[] out, int offset, int stride, int width, int height) {
+		final int rgb = ColorMath.hsvToArgb(hue, 1f, 1f, 0xff);
+		final int hr = rgb >> 16 & 0xff, hg = rgb >> 8 & 0xff, hb = rgb & 0xff;
+		final float lastX = Math.max(1, width - 1), lastY = Math.max(1, height - 1);
+		for (int y = 0; y < height; y++) {
+			final float val = 1f - y / lastY;
+			final int row = offset + y * stride;
+			for (int x = 0; x < width; x++) {
+				final float sat = x / lastX;
+				// Same as multiplying a white to hue gradient by a white to
+				// black one.
+				final int r = (int) (val * (255 + (hr - 255) * sat) + 0.5f);
+				final int g = (int) (val * (255 + (hg - 255) * sat) + 0.5f);
+				final int b = (int) (val * (255 + (hb - 255) * sat) + 0.5f);
+				out[row + x] = 0xff000000 | r << 16 | g << 8 | b;
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package org.mariotaku.preference;
+
+import org.mariotaku.preference.ColorPickerPreference.OnColorPickerMetricsListener;
+
+/**
+ * Rendering and interaction metrics of a color picker, recorded into fixed
+ * size histograms. Install it with
+ * {@link ColorPickerPreference.ColorPickerDialog#setMetricsListener(OnColorPickerMetricsListener)},
+ * or implement {@link OnColorPickerMetricsListener} to receive the raw values
+ * instead.
+ *
+ * Bucket {@code i} of a histogram counts durations below
+ * {@link #getBucketUpperBoundMicros(int)}, and at least the upper bound of
+ * bucket {@code i - 1}. The last bucket is unbounded.
+ *
+ * Metrics are recorded on the UI thread, and should be read there too.
+ */
+public class ColorPickerMetrics implements OnColorPickerMetricsListener {
+
+	public static final int BUCKET_COUNT = 16;
+
+	/**
+	 * Saturation/value texture of a new hue picked up while drawing, once it
+	 * was rendered in the background or found in the cache shared by the
+	 * pickers.
+	 */
+	public static final int RESOURCE_SAT_VAL_TEXTURE = 0;
+
+	/**
+	 * Alpha strip rendered for a new color.
+	 */
+	public static final int RESOURCE_ALPHA_STRIP = 1;
+
+	private static final int FIRST_BUCKET_SHIFT = 7;
+
+	private final long[] mDrawBuckets = new long[BUCKET_COUNT];
+	private final long[] mTouchLatencyBuckets = new long[BUCKET_COUNT];
+	private long mSatValTextureRebuildCount, mAlphaStripRebuildCount;
+	private long mSkippedSampleCount;
+
+	public long getAlphaStripRebuildCount() {
+		return mAlphaStripRebuildCount;
+	}
+
+	/**
+	 * @return number of touch samples, including the historical samples
+	 *         batched in move events, which were never applied because a
+	 *         later sample was applied in the same update.
+	 */
+	public long getSkippedSampleCount() {
+		return mSkippedSampleCount;
+	}
+
+	/**
+	 * @return number of frames whose draw duration falls in the bucket.
+	 */
+	public long getDrawCount(int bucket) {
+		return mDrawBuckets[bucket];
+	}
+
+	public long getSatValTextureRebuildCount() {
+		return mSatValTextureRebuildCount;
+	}
+
+	/**
+	 * @return number of touch updates whose latency, from the touch sample to
+	 *         the invalidation of the view, falls in the bucket.
+	 */
+	public long getTouchLatencyCount(int bucket) {
+		return mTouchLatencyBuckets[bucket];
+	}
+
+	@Override
+	public void onFrameDrawn(long durationMicros) {
+		mDrawBuckets[getBucket(durationMicros)]++;
+	}
+
+	@Override
+	public void onResourceRebuilt(int resource) {
+		switch (resource) {
+			case RESOURCE_SAT_VAL_TEXTURE:
+				mSatValTextureRebuildCount++;
+				break;
+			case RESOURCE_ALPHA_STRIP:
+				mAlphaStripRebuildCount++;
+				break;
+		}
+	}
+
+	@Override
+	public void onTouchApplied(long latencyMicros, int skippedSamples) {
+		mTouchLatencyBuckets[getBucket(latencyMicros)]++;
+		mSkippedSampleCount += skippedSamples;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			mDrawBuckets[i] = 0;
+			mTouchLatencyBuckets[i] = 0;
+		}
+		mSatValTextureRebuildCount = 0;
+		mAlphaStripRebuildCount = 0;
+		mSkippedSampleCount = 0;
+	}
+
+	/**
+	 * @return exclusive upper bound of a bucket in microseconds, or
+	 *         {@link Long#MAX_VALUE} for the last bucket.
+	 */
+	public static long getBucketUpperBoundMicros(int bucket) {
+		if (bucket >= BUCKET_COUNT - 1) return Long.MAX_VALUE;
+		return 1L << bucket + FIRST_BUCKET_SHIFT;
+	}
+
+	static int getBucket(long micros) {
+		final int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, micros) >> FIRST_BUCKET_SHIFT);
+		return Math.min(BUCKET_COUNT - 1, bucket);
+	}
+}
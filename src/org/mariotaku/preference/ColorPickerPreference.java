@@ -20,34 +20,33 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
+import android.content.SharedPreferences;
 import android.content.res.Configuration;
-import android.content.res.Resources.NotFoundException;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
-import android.graphics.ComposeShader;
-import android.graphics.LinearGradient;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
 import android.graphics.PixelFormat;
 import android.graphics.Point;
-import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.Shader;
-import android.graphics.Shader.TileMode;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.Build;
+import android.os.SystemClock;
 import android.preference.Preference;
+import android.preference.PreferenceManager;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Display;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.ViewGroup.LayoutParams;
+import android.view.WindowManager;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 
@@ -58,12 +57,16 @@ import android.widget.LinearLayout;
  */
 public class ColorPickerPreference extends Preference implements Preference.OnPreferenceClickListener {
 
-	private View mView;
 	private int mDefaultValue = Color.WHITE;
-	private int mValue = Color.WHITE;
-	private String mTitle = null;
+	private LazyStringAttribute mTitle = null;
 	private float mDensity = 0;
 	private boolean mAlphaSliderEnabled = false;
+	private OnLiveColorChangeListener mLiveColorListener;
+	private int mLiveColorMaxRate = DEFAULT_LIVE_COLOR_MAX_RATE;
+
+	private OnIntValueChangeListener[] mIntValueListeners = new OnIntValueChangeListener[0];
+
+	private final CachedPreferenceValue mValue = new CachedPreferenceValue(this);
 
 	private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
 	private static final String ATTR_DEFAULTVALUE = "defaultValue";
@@ -71,6 +74,16 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 	private static final String ATTR_DIALOGTITLE = "dialogTitle";
 	private static final String ATTR_TITLE = "title";
 
+	/**
+	 * Default maximum number of live color updates per second.
+	 */
+	public static final int DEFAULT_LIVE_COLOR_MAX_RATE = 30;
+
+	/**
+	 * Tag of the preview view, used to find it again in a recycled row.
+	 */
+	private static final Object PREVIEW_VIEW_TAG = new Object();
+
 	public ColorPickerPreference(Context context) {
 		super(context);
 		init(context, null);
@@ -88,21 +101,56 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 		init(context, attrs);
 	}
 
+	/**
+	 * Add a listener receiving the new value when the user changes it, in
+	 * addition to the {@link Preference.OnPreferenceChangeListener}.
+	 */
+	public void addOnIntValueChangeListener(OnIntValueChangeListener listener) {
+
+		mIntValueListeners = ListenerArrays.add(mIntValueListeners, listener);
+	}
+
+	/**
+	 * @return the storage of the value of this preference, which is its
+	 *         {@link SharedPreferences} unless set otherwise, or null if it
+	 *         isn't attached yet.
+	 */
+	public PreferenceStorage getStorage() {
+
+		return mValue.getStorage();
+	}
+
 	@Override
 	public boolean onPreferenceClick(Preference preference) {
 
-		ColorPickerDialog dialog = new ColorPickerDialog(getContext(), getValue());
-		if (mTitle != null) {
-			dialog.setTitle(mTitle);
-		}
-		if (mAlphaSliderEnabled) {
-			dialog.setAlphaSliderVisible(true);
+		final long clickTime = SystemClock.uptimeMillis();
+		ColorPickerDialog dialog = DialogPool.get(getContext(), ColorPickerDialog.class);
+		if (dialog == null) {
+			dialog = new ColorPickerDialog(getContext(), getValue());
+			DialogPool.put(getContext(), dialog);
 		}
-		dialog.show();
+		dialog.bind(this);
+		DialogPool.show(dialog, clickTime);
 
 		return false;
 	}
 
+	public void removeOnIntValueChangeListener(OnIntValueChangeListener listener) {
+
+		mIntValueListeners = ListenerArrays.remove(mIntValueListeners, listener);
+	}
+
+	/**
+	 * Set the storage of the value of this preference, instead of its
+	 * {@link SharedPreferences}.
+	 * 
+	 * @param storage the storage, or null to use the SharedPreferences.
+	 */
+	public void setStorage(PreferenceStorage storage) {
+
+		mValue.setStorage(storage);
+	}
+
 	/**
 	 * Toggle Alpha Slider visibility (by default it's disabled)
 	 * 
@@ -113,55 +161,127 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 		mAlphaSliderEnabled = enable;
 	}
 
+	/**
+	 * Build the render resources of the color picker dialog on a background
+	 * thread, so the first dialog opens without rendering them on the UI
+	 * thread. May be called from {@link android.app.Application#onCreate()}.
+	 * Preferences attached to a screen only build the resources shared by
+	 * every color, the texture of their color is rendered when the dialog
+	 * opens.
+	 * 
+	 * @param initialColor color the dialog is expected to open with.
+	 */
+	public static void prewarm(int initialColor) {
+
+		ColorPickerPrewarmer.prewarm(initialColor);
+	}
+
+	/**
+	 * Set the maximum number of times per second the live color listener is
+	 * called while the user drags in the color picker dialog.
+	 * 
+	 * @param updatesPerSecond maximum rate, defaults to
+	 *            {@link #DEFAULT_LIVE_COLOR_MAX_RATE}.
+	 */
+	public void setLiveColorMaxRate(int updatesPerSecond) {
+
+		if (updatesPerSecond <= 0) throw new IllegalArgumentException("updatesPerSecond <= 0");
+		mLiveColorMaxRate = updatesPerSecond;
+	}
+
+	/**
+	 * Set a listener receiving intermediate colors while the color picker
+	 * dialog is shown. Nothing is persisted until the user confirms, and if
+	 * the dialog is cancelled the listener receives the original color again.
+	 * 
+	 * @param listener the listener, or null to disable live updates.
+	 */
+	public void setOnLiveColorChangeListener(OnLiveColorChangeListener listener) {
+
+		mLiveColorListener = listener;
+	}
+
 	@Override
 	protected void onBindView(View view) {
 
 		super.onBindView(view);
-		mView = view;
-		setPreviewColor();
+		setPreviewColor(view);
+	}
+
+	@Override
+	protected int getPersistedInt(int defaultReturnValue) {
+
+		if (!shouldPersist()) return defaultReturnValue;
+		return getStorage().getInt(getKey(), defaultReturnValue);
+	}
+
+	@Override
+	protected boolean persistInt(int value) {
+
+		if (!shouldPersist()) return false;
+		// Written by the shared write-behind layer, which skips unchanged
+		// values and keeps the others in the memory of the storage until
+		// the next flush writes them in one transaction per storage.
+		PreferenceWriteBatcher.putInt(getContext(), getStorage(), getKey(), value);
+		return true;
+	}
+
+	@Override
+	protected void onAttachedToHierarchy(PreferenceManager preferenceManager) {
+
+		super.onAttachedToHierarchy(preferenceManager);
+		mValue.observe();
+		ColorPickerPrewarmer.prewarmSharedResources();
+	}
+
+	@Override
+	protected void onPrepareForRemoval() {
+
+		super.onPrepareForRemoval();
+		mValue.stopObserving();
 	}
 
 	@Override
 	protected void onSetInitialValue(boolean restoreValue, Object defaultValue) {
 
-		if (isPersistent()) {
-			persistInt(restoreValue ? getValue() : (Integer) defaultValue);
+		// Only called without a value to restore when a default was set with
+		// setDefaultValue(). A restored value is already stored, and the
+		// framework only checks the SharedPreferences for one, so the default
+		// is only written if the storage has no value either.
+		if (!restoreValue && shouldPersist() && !getStorage().contains(getKey())) {
+			final int value = (Integer) defaultValue;
+			mValue.setInt(value);
+			persistInt(value);
 		}
+	}
 
+	/**
+	 * Change the value without notifying listeners or rebinding the view, for
+	 * {@link PreferenceProfiles} which does both once for all preferences.
+	 */
+	void applyValue(int value) {
+
+		mValue.setInt(value);
+		persistInt(value);
 	}
 
-	private Bitmap getPreviewBitmap() {
-
-		int d = (int) (mDensity * 31); // 30dip
-		int color = getValue();
-		Bitmap bm = Bitmap.createBitmap(d, d, Config.ARGB_8888);
-		int w = bm.getWidth();
-		int h = bm.getHeight();
-		int c = color;
-		for (int i = 0; i < w; i++) {
-			for (int j = i; j < h; j++) {
-				c = i <= 1 || j <= 1 || i >= w - 2 || j >= h - 2 ? Color.GRAY : color;
-				bm.setPixel(i, j, c);
-				if (i != j) {
-					bm.setPixel(j, i, c);
-				}
-			}
-		}
+	int getDefaultValue() {
 
-		return bm;
+		return mDefaultValue;
 	}
 
-	private int getValue() {
+	int getValue() {
 
+		if (mValue.isCached()) return mValue.getInt();
 		try {
 			if (isPersistent()) {
-				mValue = getPersistedInt(mDefaultValue);
+				mValue.setInt(getPersistedInt(mDefaultValue));
 			}
 		} catch (ClassCastException e) {
-			mValue = mDefaultValue;
+			mValue.setInt(mDefaultValue);
 		}
 
-		return mValue;
+		return mValue.getInt();
 	}
 
 	private void init(Context context, AttributeSet attrs) {
@@ -169,18 +289,10 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 		mDensity = getContext().getResources().getDisplayMetrics().density;
 		setOnPreferenceClickListener(this);
 		if (attrs != null) {
-			try {
-				mTitle = context.getString(attrs.getAttributeResourceValue(ANDROID_NS, ATTR_DIALOGTITLE, -1));
-			} catch (NotFoundException e) {
-				mTitle = attrs.getAttributeValue(ANDROID_NS, ATTR_DIALOGTITLE);
-			}
-
+			// Strings are resolved when the dialog is first shown.
+			mTitle = LazyStringAttribute.read(attrs, ANDROID_NS, ATTR_DIALOGTITLE);
 			if (mTitle == null) {
-				try {
-					mTitle = context.getString(attrs.getAttributeResourceValue(ANDROID_NS, ATTR_TITLE, -1));
-				} catch (NotFoundException e) {
-					mTitle = attrs.getAttributeValue(ANDROID_NS, ATTR_TITLE);
-				}
+				mTitle = LazyStringAttribute.read(attrs, ANDROID_NS, ATTR_TITLE);
 			}
 
 			String defaultValue = attrs.getAttributeValue(ANDROID_NS, ATTR_DEFAULTVALUE);
@@ -199,25 +311,31 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 			}
 			mAlphaSliderEnabled = attrs.getAttributeBooleanValue(null, ATTR_ALPHASLIDER, false);
 		}
-		mValue = mDefaultValue;
+		mValue.setInt(mDefaultValue);
 	}
 
-	private void setPreviewColor() {
+	private void setPreviewColor(View view) {
 
-		if (mView == null) return;
-		ImageView iView = new ImageView(getContext());
-		LinearLayout widgetFrameView = (LinearLayout) mView.findViewById(android.R.id.widget_frame);
+		ViewGroup widgetFrameView = (ViewGroup) view.findViewById(android.R.id.widget_frame);
 		if (widgetFrameView == null) return;
-		widgetFrameView.setPadding(widgetFrameView.getPaddingLeft(), widgetFrameView.getPaddingTop(),
-				(int) (mDensity * 8), widgetFrameView.getPaddingBottom());
-		// remove already create preview image
-		int count = widgetFrameView.getChildCount();
-		if (count > 0) {
-			widgetFrameView.removeViews(0, count);
+		ImageView iView = (ImageView) widgetFrameView.findViewWithTag(PREVIEW_VIEW_TAG);
+		if (iView == null) {
+			widgetFrameView.setPadding(widgetFrameView.getPaddingLeft(), widgetFrameView.getPaddingTop(),
+					(int) (mDensity * 8), widgetFrameView.getPaddingBottom());
+			// remove views left by other preference types using this row
+			int count = widgetFrameView.getChildCount();
+			if (count > 0) {
+				widgetFrameView.removeViews(0, count);
+			}
+			iView = new ImageView(getContext());
+			iView.setTag(PREVIEW_VIEW_TAG);
+			iView.setImageDrawable(new ColorSwatchDrawable((int) (mDensity * 31), (int) (5 * mDensity), Color.GRAY,
+					2));
+			widgetFrameView.addView(iView);
 		}
-		widgetFrameView.addView(iView);
-		iView.setBackgroundDrawable(new AlphaPatternDrawable((int) (5 * mDensity)));
-		iView.setImageBitmap(getPreviewBitmap());
+		// The drawable belongs to the row, so a recycled row only needs its
+		// color updated.
+		((ColorSwatchDrawable) iView.getDrawable()).setColor(getValue());
 	}
 
 	/**
@@ -227,27 +345,27 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 	 * 
 	 * @author Daniel Nilsson
 	 */
-	public class AlphaPatternDrawable extends Drawable {
+	public static class AlphaPatternDrawable extends Drawable {
 
 		private int mRectangleSize = 10;
 
-		private int numRectanglesHorizontal;
-		private int numRectanglesVertical;
-
 		/**
-		 * Bitmap in which the pattern will be cahched.
+		 * Paint drawing the shared chessboard tile, so no pattern bitmap is
+		 * needed for the size of this drawable.
 		 */
-		private Bitmap mBitmap;
+		private final Paint mPaint;
+		private final Matrix mMatrix = new Matrix();
 
 		public AlphaPatternDrawable(int rectangleSize) {
 
 			mRectangleSize = rectangleSize;
+			mPaint = CheckerboardTile.createPaint(rectangleSize);
 		}
 
 		@Override
 		public void draw(Canvas canvas) {
 
-			canvas.drawBitmap(mBitmap, null, getBounds(), new Paint());
+			canvas.drawRect(getBounds(), mPaint);
 		}
 
 		@Override
@@ -271,59 +389,45 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 			super.onBoundsChange(bounds);
 
-			int height = bounds.height();
-			int width = bounds.width();
-
-			numRectanglesHorizontal = (int) Math.ceil(width / mRectangleSize);
-			numRectanglesVertical = (int) Math.ceil(height / mRectangleSize);
-
-			generatePatternBitmap();
+			CheckerboardTile.setOrigin(mPaint, mMatrix, bounds.left, bounds.top);
 
 		}
 
-		/**
-		 * This will generate a bitmap with the pattern as big as the rectangle
-		 * we were allow to draw on. We do this to chache the bitmap so we don't
-		 * need to recreate it each time draw() is called since it takes a few
-		 * milliseconds.
-		 */
-		private void generatePatternBitmap() {
-
-			if (getBounds().width() <= 0 || getBounds().height() <= 0) return;
-
-			mBitmap = Bitmap.createBitmap(getBounds().width(), getBounds().height(), Config.ARGB_8888);
-			Canvas canvas = new Canvas(mBitmap);
-
-			Rect r = new Rect();
-			boolean verticalStartWhite = true;
-			for (int i = 0; i <= numRectanglesVertical; i++) {
+	}
 
-				boolean isWhite = verticalStartWhite;
-				for (int j = 0; j <= numRectanglesHorizontal; j++) {
+	/**
+	 * Color picker dialog. Dialogs opened by a preference are pooled per
+	 * activity by {@link DialogPool}, and bound to the clicked preference
+	 * each time they are shown.
+	 */
+	public static class ColorPickerDialog extends AlertDialog implements OnClickListener {
 
-					r.top = i * mRectangleSize;
-					r.left = j * mRectangleSize;
-					r.bottom = r.top + mRectangleSize;
-					r.right = r.left + mRectangleSize;
+		private ColorPickerView mColorPicker;
+		private ColorPickerPreference mPreference;
 
-					Paint paint = new Paint();
-					paint.setColor(isWhite ? Color.WHITE : Color.GRAY);
-					canvas.drawRect(r, paint);
+		/**
+		 * Title icon, updated in place while the color is being dragged.
+		 */
+		private ColorSwatchDrawable mIcon;
 
-					isWhite = !isWhite;
-				}
+		/*
+		 * Live color updates, delivered at most once every
+		 * mLiveColorInterval milliseconds. The last color is always
+		 * delivered.
+		 */
+		private OnLiveColorChangeListener mLiveListener;
+		private long mLiveColorInterval;
+		private long mLastLiveColorTime;
+		private int mInitialColor, mLastLiveColor, mPendingLiveColor;
+		private boolean mLiveColorPending, mConfirmed;
+		private final Runnable mLiveColorCallback = new Runnable() {
 
-				verticalStartWhite = !verticalStartWhite;
+			@Override
+			public void run() {
 
+				dispatchLiveColor(mPendingLiveColor);
 			}
-
-		}
-
-	}
-
-	public class ColorPickerDialog extends AlertDialog implements OnClickListener {
-
-		private ColorPickerView mColorPicker;
+		};
 
 		public ColorPickerDialog(Context context, int initialColor) {
 
@@ -342,13 +446,25 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 			switch (which) {
 				case BUTTON_POSITIVE:
 					int color = mColorPicker.getColor();
-					if (isPersistent()) {
-						persistInt(color);
+					mConfirmed = true;
+					if (mLiveListener != null) {
+						dispatchLiveColor(color);
+					}
+					final ColorPickerPreference preference = mPreference;
+					if (preference == null) {
+						break;
 					}
-					mValue = color;
-					setPreviewColor();
-					if (getOnPreferenceChangeListener() != null) {
-						getOnPreferenceChangeListener().onPreferenceChange(ColorPickerPreference.this, color);
+					if (preference.isPersistent()) {
+						preference.persistInt(color);
+						PreferenceWriteBatcher.flushInBackground();
+					}
+					preference.mValue.setInt(color);
+					preference.notifyChanged();
+					if (preference.getOnPreferenceChangeListener() != null) {
+						preference.getOnPreferenceChangeListener().onPreferenceChange(preference, color);
+					}
+					for (OnIntValueChangeListener listener : preference.mIntValueListeners) {
+						listener.onIntValueChange(preference, color);
 					}
 					break;
 			}
@@ -358,7 +474,19 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 		public void onColorChanged(int color) {
 
-			setIcon(new BitmapDrawable(getContext().getResources(), getPreviewBitmap(color)));
+			mIcon.setColor(color);
+
+			if (mLiveListener == null) return;
+			final long wait = mLastLiveColorTime + mLiveColorInterval - SystemClock.uptimeMillis();
+			if (wait <= 0) {
+				dispatchLiveColor(color);
+			} else {
+				mPendingLiveColor = color;
+				if (!mLiveColorPending) {
+					mLiveColorPending = true;
+					mColorPicker.postDelayed(mLiveColorCallback, wait);
+				}
+			}
 
 		}
 
@@ -367,48 +495,71 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 			mColorPicker.setAlphaSliderVisible(visible);
 		}
 
-		private Bitmap getPreviewBitmap(int color) {
-
-			float density = getContext().getResources().getDisplayMetrics().density;
-			int width = (int) (32 * density), height = (int) (32 * density);
+		/**
+		 * Set a listener receiving draw and touch metrics of the color picker,
+		 * such as a {@link ColorPickerMetrics}.
+		 * 
+		 * @param listener the listener, or null to stop measuring.
+		 */
+		public void setMetricsListener(OnColorPickerMetricsListener listener) {
 
-			Bitmap bm = Bitmap.createBitmap(width, height, Config.ARGB_8888);
-			Canvas canvas = new Canvas(bm);
+			mColorPicker.setMetricsListener(listener);
+		}
 
-			int rectrangle_size = (int) (density * 5);
-			int numRectanglesHorizontal = (int) Math.ceil(width / rectrangle_size);
-			int numRectanglesVertical = (int) Math.ceil(height / rectrangle_size);
-			Rect r = new Rect();
-			boolean verticalStartWhite = true;
-			for (int i = 0; i <= numRectanglesVertical; i++) {
+		/**
+		 * Set a listener receiving intermediate colors while the user drags.
+		 * 
+		 * @param listener the listener, or null to disable live updates.
+		 * @param maxRate maximum number of updates per second.
+		 */
+		public void setOnLiveColorChangeListener(OnLiveColorChangeListener listener, int maxRate) {
 
-				boolean isWhite = verticalStartWhite;
-				for (int j = 0; j <= numRectanglesHorizontal; j++) {
+			mLiveListener = listener;
+			mLiveColorInterval = 1000 / Math.max(1, maxRate);
+			mLastLiveColor = mInitialColor;
+		}
 
-					r.top = i * rectrangle_size;
-					r.left = j * rectrangle_size;
-					r.bottom = r.top + rectrangle_size;
-					r.right = r.left + rectrangle_size;
-					Paint paint = new Paint();
-					paint.setColor(isWhite ? Color.WHITE : Color.GRAY);
+		@Override
+		protected void onStop() {
 
-					canvas.drawRect(r, paint);
+			super.onStop();
+			// Revert the live color if the dialog was not confirmed.
+			if (mLiveListener != null && !mConfirmed) {
+				dispatchLiveColor(mInitialColor);
+			}
+			mColorPicker.removeCallbacks(mLiveColorCallback);
+			mLiveColorPending = false;
+		}
 
-					isWhite = !isWhite;
-				}
+		private void dispatchLiveColor(int color) {
 
-				verticalStartWhite = !verticalStartWhite;
+			mColorPicker.removeCallbacks(mLiveColorCallback);
+			mLiveColorPending = false;
+			mLastLiveColorTime = SystemClock.uptimeMillis();
+			if (color == mLastLiveColor) return;
+			mLastLiveColor = color;
+			mLiveListener.onLiveColorChange(mPreference, color);
+		}
 
+		/**
+		 * Show the color, title and options of a preference, and reset the
+		 * state left by the previous time this dialog was shown.
+		 */
+		void bind(ColorPickerPreference preference) {
+
+			final int color = preference.getValue();
+			mPreference = preference;
+			mConfirmed = false;
+			mLiveListener = null;
+			mColorPicker.removeCallbacks(mLiveColorCallback);
+			mLiveColorPending = false;
+			mInitialColor = color;
+			mColorPicker.setColor(color, true);
+			mColorPicker.setAlphaSliderVisible(preference.mAlphaSliderEnabled);
+			setTitle(preference.mTitle != null ? preference.mTitle.get(getContext()) : preference.getTitle());
+			if (preference.mLiveColorListener != null) {
+				setOnLiveColorChangeListener(preference.mLiveColorListener, preference.mLiveColorMaxRate);
 			}
-			canvas.drawColor(color);
-			Paint paint = new Paint();
-			paint.setColor(Color.WHITE);
-			paint.setStrokeWidth(2.0f);
-			float[] points = new float[] { 0, 0, width, 0, 0, 0, 0, height, width, 0, width, height, 0, height, width,
-					height };
-			canvas.drawLines(points, paint);
-
-			return bm;
 		}
 
 		private void init(Context context, int color) {
@@ -426,6 +577,11 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 			mContentView.setPadding(Math.round(mColorPicker.getDrawingOffset()), 0,
 					Math.round(mColorPicker.getDrawingOffset()), 0);
 
+			float density = context.getResources().getDisplayMetrics().density;
+			mIcon = new ColorSwatchDrawable((int) (32 * density), (int) (5 * density), Color.WHITE, 1);
+			setIcon(mIcon);
+
+			mInitialColor = color;
 			mColorPicker.setColor(color, true);
 
 			setView(mContentView);
@@ -488,16 +644,32 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 			private Paint mBorderPaint;
 
-			private Shader mValShader;
-			private Shader mSatShader;
-			private Shader mHueShader;
-			private Shader mAlphaShader;
+			/*
+			 * Alpha strip rendered by ColorPanelRasterizer, one pixel high and
+			 * drawn scaled to the alpha panel.
+			 */
+			private Bitmap mAlphaBitmap;
+			private int[] mAlphaPixels;
+			private int mAlphaBitmapColor;
+
+			/*
+			 * Saturation/value texture last drawn, kept on screen while the
+			 * texture of a new hue is rendered in the background, and the hue
+			 * bucket it was drawn for.
+			 */
+			private Bitmap mSatValTexture;
+			private int mSatValTextureBucket;
 
 			private int mAlpha = 0xff;
 			private float mHue = 360f;
 			private float mSat = 0f;
 			private float mVal = 0f;
 
+			/**
+			 * Scratch array for color conversions and touch mapping.
+			 */
+			private final float[] mHsv = new float[3];
+
 			private String mAlphaSliderText = "";
 			private int mSliderTrackerColor = 0xff1c1c1c;
 			private int mBorderColor = 0xff6E6E6E;
@@ -519,15 +691,60 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 			 * Distance form the edges of the view of where we are allowed to
 			 * draw.
 			 */
-			private RectF mDrawingRect;
+			private final RectF mDrawingRect = new RectF();
 
-			private RectF mSatValRect;
-			private RectF mHueRect;
+			private final RectF mSatValRect = new RectF();
+			private final RectF mHueRect = new RectF();
 			private RectF mAlphaRect;
 
 			private AlphaPatternDrawable mAlphaPattern;
 
-			private Point mStartTouchPoint = null;
+			/*
+			 * Scratch objects for drawing the trackers.
+			 */
+			private final Point mTrackerPoint = new Point();
+			private final RectF mTrackerRect = new RectF();
+
+			private final Point mStartTouchPoint = new Point();
+			private boolean mTracking;
+			private boolean mTouchInPanel;
+
+			/*
+			 * Latest touch position not applied yet. Touch moves are
+			 * coalesced, and applied at most once per display refresh
+			 * interval by a delayed callback, since Choreographer isn't
+			 * available on API 15. The sample received before the latest one,
+			 * the last historical sample of a move event if it has any, gives
+			 * the velocity a coalesced move is carried forward with until it
+			 * is applied.
+			 */
+			private float mPendingTouchX, mPendingTouchY;
+			private float mPreviousTouchX, mPreviousTouchY;
+			private long mPreviousTouchTime;
+			private boolean mTouchPending, mTouchMoving;
+			private long mFrameIntervalMillis;
+			private long mLastTouchUpdateTime;
+			private final Runnable mTouchUpdateCallback = new Runnable() {
+
+				@Override
+				public void run() {
+
+					applyTouchUpdate();
+				}
+			};
+
+			private int mTouchEventCount;
+			private int mTouchUpdateCount;
+
+			/*
+			 * Metrics, only measured while a listener is installed. The
+			 * pending touch time and sample count describe the samples
+			 * coalesced into the pending touch position.
+			 */
+			private OnColorPickerMetricsListener mMetricsListener;
+			private MethodsCompat mMethodsCompat;
+			private long mPendingTouchTime;
+			private int mPendingTouchSamples;
 
 			public ColorPickerView(Context context) {
 
@@ -571,7 +788,7 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 			 */
 			public int getColor() {
 
-				return Color.HSVToColor(mAlpha, new float[] { mHue, mSat, mVal });
+				return ColorMath.hsvToArgb(mHue, mSat, mVal, mAlpha);
 			}
 
 			/**
@@ -593,45 +810,104 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 				return mSliderTrackerColor;
 			}
 
+			/**
+			 * @return number of touch samples received, including batched
+			 *         historical samples.
+			 */
+			public int getTouchEventCount() {
+
+				return mTouchEventCount;
+			}
+
+			/**
+			 * @return number of color updates applied from touch samples.
+			 */
+			public int getTouchUpdateCount() {
+
+				return mTouchUpdateCount;
+			}
+
 			@Override
 			public boolean onTouchEvent(MotionEvent event) {
 
-				boolean update = false;
-
 				switch (event.getAction()) {
 
 					case MotionEvent.ACTION_DOWN:
 
-						mStartTouchPoint = new Point((int) event.getX(), (int) event.getY());
+						mTouchEventCount++;
 
-						update = moveTrackersIfNeeded(event);
+						mStartTouchPoint.set((int) event.getX(), (int) event.getY());
+						mTracking = true;
+
+						// Respond to the first touch right away, following
+						// moves are applied once per refresh interval.
+						mPendingTouchX = event.getX();
+						mPendingTouchY = event.getY();
+						mPendingTouchTime = event.getEventTime();
+						mPendingTouchSamples = 1;
+						mTouchPending = true;
+						mTouchMoving = false;
+						mTouchInPanel = applyTouchUpdate();
 
 						break;
 
 					case MotionEvent.ACTION_MOVE:
 
-						update = moveTrackersIfNeeded(event);
+						// A move event batches the historical samples since
+						// the last event before its current one. The trackers
+						// are placed by the current, latest sample, carried
+						// forward with its velocity from the last historical
+						// one. Older samples are only counted as skipped.
+						final int history = event.getHistorySize();
+						if (history > 0) {
+							mPreviousTouchX = event.getHistoricalX(history - 1);
+							mPreviousTouchY = event.getHistoricalY(history - 1);
+							mPreviousTouchTime = event.getHistoricalEventTime(history - 1);
+						} else {
+							mPreviousTouchX = mPendingTouchX;
+							mPreviousTouchY = mPendingTouchY;
+							mPreviousTouchTime = mPendingTouchTime;
+						}
+						final int samples = history + 1;
+						mTouchEventCount += samples;
+						mPendingTouchSamples += samples;
+						mPendingTouchTime = event.getEventTime();
+						mTouchMoving = true;
+
+						queueTouchUpdate(event.getX(), event.getY());
 
 						break;
 
 					case MotionEvent.ACTION_UP:
 
-						mStartTouchPoint = null;
+						mTouchEventCount++;
+
+						mPendingTouchX = event.getX();
+						mPendingTouchY = event.getY();
+						mPendingTouchTime = event.getEventTime();
+						mPendingTouchSamples++;
+						mTouchPending = true;
+						mTouchMoving = false;
+						applyTouchUpdate();
 
-						update = moveTrackersIfNeeded(event);
+						mTracking = false;
 
 						break;
 
-				}
+					case MotionEvent.ACTION_CANCEL:
 
-				if (update) {
+						// Drop the pending move, the gesture was taken away.
+						removeCallbacks(mTouchUpdateCallback);
+						mTouchPending = false;
+						mPendingTouchSamples = 0;
+						mTracking = false;
 
-					onColorChanged(Color.HSVToColor(mAlpha, new float[] { mHue, mSat, mVal }));
+						break;
 
-					invalidate();
-					return true;
 				}
 
+				if (mTouchInPanel) return true;
+
 				return super.onTouchEvent(event);
 			}
 
@@ -716,7 +992,7 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 				if (update) {
 
-					onColorChanged(Color.HSVToColor(mAlpha, new float[] { mHue, mSat, mVal }));
+					onColorChanged(ColorMath.hsvToArgb(mHue, mSat, mVal, mAlpha));
 
 					invalidate();
 					return true;
@@ -760,17 +1036,6 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 				if (mShowAlphaPanel != visible) {
 					mShowAlphaPanel = visible;
 
-					/*
-					 * Reset all shader to force a recreation. Otherwise they
-					 * will not look right after the size of the view has
-					 * changed.
-					 */
-					mValShader = null;
-					mSatShader = null;
-					mHueShader = null;
-					mAlphaShader = null;
-					;
-
 					requestLayout();
 				}
 
@@ -806,21 +1071,16 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 			 */
 			public void setColor(int color, boolean callback) {
 
-				int alpha = Color.alpha(color);
-				int red = Color.red(color);
-				int blue = Color.blue(color);
-				int green = Color.green(color);
-
-				float[] hsv = new float[3];
+				final float[] hsv = mHsv;
 
-				Color.RGBToHSV(red, green, blue, hsv);
+				ColorMath.argbToHsv(color, hsv);
 
-				mAlpha = alpha;
+				mAlpha = Color.alpha(color);
 				mHue = hsv[0];
 				mSat = hsv[1];
 				mVal = hsv[2];
 
-				onColorChanged(Color.HSVToColor(mAlpha, new float[] { mHue, mSat, mVal }));
+				onColorChanged(ColorMath.hsvToArgb(mHue, mSat, mVal, mAlpha));
 
 				invalidate();
 			}
@@ -834,15 +1094,43 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 				invalidate();
 			}
 
+			/**
+			 * Set a listener receiving draw and touch metrics of this view,
+			 * and emit systrace sections while drawing on API 18 and up.
+			 * 
+			 * @param listener the listener, or null to stop measuring.
+			 */
+			public void setMetricsListener(OnColorPickerMetricsListener listener) {
+
+				mMetricsListener = listener;
+				if (listener != null && mMethodsCompat == null && MethodsCompat.TRACE_AVAILABLE) {
+					mMethodsCompat = new MethodsCompat();
+				}
+			}
+
 			@Override
 			protected void onDraw(Canvas canvas) {
 
 				if (mDrawingRect.width() <= 0 || mDrawingRect.height() <= 0) return;
 
-				drawSatValPanel(canvas);
-				drawHuePanel(canvas);
-				drawAlphaPanel(canvas);
+				final OnColorPickerMetricsListener listener = mMetricsListener;
+				if (listener == null) {
+					drawPanels(canvas);
+					return;
+				}
+
+				final MethodsCompat trace = mMethodsCompat;
+				if (trace != null) {
+					trace.beginTraceSection("ColorPickerView#onDraw");
+				}
+				final long start = System.nanoTime();
+				drawPanels(canvas);
+				final long duration = System.nanoTime() - start;
+				if (trace != null) {
+					trace.endTraceSection();
+				}
 
+				listener.onFrameDrawn(duration / 1000);
 			}
 
 			@Override
@@ -895,7 +1183,6 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 				super.onSizeChanged(w, h, oldw, oldh);
 
-				mDrawingRect = new RectF();
 				mDrawingRect.left = mDrawingOffset + getPaddingLeft();
 				mDrawingRect.right = w - mDrawingOffset - getPaddingRight();
 				mDrawingRect.top = mDrawingOffset + getPaddingTop();
@@ -906,30 +1193,61 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 				setUpAlphaRect();
 			}
 
-			private Point alphaToPoint(int alpha) {
+			/**
+			 * Apply the pending touch position, if any.
+			 * 
+			 * @return true if the touch started in one of the panels.
+			 */
+			private boolean applyTouchUpdate() {
+
+				removeCallbacks(mTouchUpdateCallback);
+				if (!mTouchPending) return false;
+				mTouchPending = false;
+				mLastTouchUpdateTime = SystemClock.uptimeMillis();
+				final int samples = mPendingTouchSamples;
+				mPendingTouchSamples = 0;
+
+				float x = mPendingTouchX, y = mPendingTouchY;
+				if (mTouchMoving) {
+					// Carry a coalesced move forward to the time it is
+					// applied, by at most one frame and one sample interval,
+					// so the tracker doesn't lag behind the finger.
+					final long interval = mPendingTouchTime - mPreviousTouchTime;
+					final long ahead = Math.min(mLastTouchUpdateTime - mPendingTouchTime, mFrameIntervalMillis);
+					if (interval > 0 && ahead > 0) {
+						final float scale = Math.min(1f, (float) ahead / interval);
+						x += (mPendingTouchX - mPreviousTouchX) * scale;
+						y += (mPendingTouchY - mPreviousTouchY) * scale;
+					}
+				}
+
+				if (moveTrackersIfNeeded(x, y)) {
 
-				final RectF rect = mAlphaRect;
-				final float width = rect.width();
+					mTouchUpdateCount++;
 
-				Point p = new Point();
+					onColorChanged(ColorMath.hsvToArgb(mHue, mSat, mVal, mAlpha));
 
-				p.x = (int) (width - alpha * width / 0xff + rect.left);
-				p.y = (int) rect.top;
+					invalidate();
 
-				return p;
+					final OnColorPickerMetricsListener listener = mMetricsListener;
+					if (listener != null) {
+						final long latency = SystemClock.uptimeMillis() - mPendingTouchTime;
+						listener.onTouchApplied(latency * 1000, Math.max(0, samples - 1));
+					}
+					return true;
+				}
 
+				return false;
 			}
 
-			private int[] buildHueColorArray() {
+			private void alphaToPoint(int alpha, Point p) {
 
-				int[] hue = new int[361];
+				final RectF rect = mAlphaRect;
+				final float width = rect.width();
 
-				int count = 0;
-				for (int i = hue.length - 1; i >= 0; i--, count++) {
-					hue[count] = Color.HSVToColor(new float[] { i, 1f, 1f });
-				}
+				p.x = (int) (width - alpha * width / 0xff + rect.left);
+				p.y = (int) rect.top;
 
-				return hue;
 			}
 
 			private float calculateRequiredOffset() {
@@ -966,16 +1284,24 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 				mAlphaPattern.draw(canvas);
 
-				float[] hsv = new float[] { mHue, mSat, mVal };
-				int color = Color.HSVToColor(hsv);
-				int acolor = Color.HSVToColor(0, hsv);
-
-				mAlphaShader = new LinearGradient(rect.left, rect.top, rect.right, rect.top, color, acolor,
-						TileMode.CLAMP);
+				int color = ColorMath.hsvToArgb(mHue, mSat, mVal, 0xff);
+				int width = Math.max(1, Math.round(rect.width()));
 
-				mAlphaPaint.setShader(mAlphaShader);
+				if (mAlphaBitmap == null || mAlphaBitmap.getWidth() != width) {
+					mAlphaBitmap = Bitmap.createBitmap(width, 1, Config.ARGB_8888);
+					mAlphaPixels = new int[width];
+					mAlphaBitmapColor = ~color;
+				}
+				if (mAlphaBitmapColor != color) {
+					ColorPanelRasterizer.renderAlphaStrip(color, mAlphaPixels, 0, width);
+					mAlphaBitmap.setPixels(mAlphaPixels, 0, width, 0, 0, width, 1);
+					mAlphaBitmapColor = color;
+					if (mMetricsListener != null) {
+						mMetricsListener.onResourceRebuilt(ColorPickerMetrics.RESOURCE_ALPHA_STRIP);
+					}
+				}
 
-				canvas.drawRect(rect, mAlphaPaint);
+				canvas.drawBitmap(mAlphaBitmap, null, rect, mAlphaPaint);
 
 				if (mAlphaSliderText != null && mAlphaSliderText != "") {
 					canvas.drawText(mAlphaSliderText, rect.centerX(), rect.centerY() + 4 * mDensity, mAlphaTextPaint);
@@ -983,9 +1309,10 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 				float rectWidth = 4 * mDensity / 2;
 
-				Point p = alphaToPoint(mAlpha);
+				final Point p = mTrackerPoint;
+				alphaToPoint(mAlpha, p);
 
-				RectF r = new RectF();
+				final RectF r = mTrackerRect;
 				r.left = p.x - rectWidth;
 				r.right = p.x + rectWidth;
 				r.top = rect.top - RECTANGLE_TRACKER_OFFSET;
@@ -1005,19 +1332,14 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 							+ BORDER_WIDTH_PX, rect.bottom + BORDER_WIDTH_PX, mBorderPaint);
 				}
 
-				if (mHueShader == null) {
-					mHueShader = new LinearGradient(rect.left, rect.top, rect.left, rect.bottom, buildHueColorArray(),
-							null, TileMode.CLAMP);
-					mHuePaint.setShader(mHueShader);
-				}
-
-				canvas.drawRect(rect, mHuePaint);
+				canvas.drawBitmap(HueStripBitmap.get(), null, rect, mHuePaint);
 
 				float rectHeight = 4 * mDensity / 2;
 
-				Point p = hueToPoint(mHue);
+				final Point p = mTrackerPoint;
+				hueToPoint(mHue, p);
 
-				RectF r = new RectF();
+				final RectF r = mTrackerRect;
 				r.left = rect.left - RECTANGLE_TRACKER_OFFSET;
 				r.right = rect.right + RECTANGLE_TRACKER_OFFSET;
 				r.top = p.y - rectHeight;
@@ -1027,6 +1349,13 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 			}
 
+			private void drawPanels(Canvas canvas) {
+
+				drawSatValPanel(canvas);
+				drawHuePanel(canvas);
+				drawAlphaPanel(canvas);
+			}
+
 			private void drawSatValPanel(Canvas canvas) {
 
 				final RectF rect = mSatValRect;
@@ -1037,21 +1366,27 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 							+ BORDER_WIDTH_PX, mBorderPaint);
 				}
 
-				if (mValShader == null) {
-					mValShader = new LinearGradient(rect.left, rect.top, rect.left, rect.bottom, 0xffffffff,
-							0xff000000, TileMode.CLAMP);
+				// Until the texture of a new hue is rendered, the previous one
+				// is drawn, and the cache invalidates this view once it's ready.
+				final Bitmap texture = SatValTextureCache.requestTexture(mHue, this);
+				final int bucket = SatValTextureCache.getBucket(mHue);
+				if (texture != null) {
+					// Textures are recycled by the cache, so a new one may be
+					// the same bitmap.
+					if (mMetricsListener != null && mSatValTexture != null
+							&& (texture != mSatValTexture || bucket != mSatValTextureBucket)) {
+						mMetricsListener.onResourceRebuilt(ColorPickerMetrics.RESOURCE_SAT_VAL_TEXTURE);
+					}
+					mSatValTexture = texture;
+					mSatValTextureBucket = bucket;
+				} else if (mSatValTexture == null) {
+					mSatValTexture = SatValTextureCache.getTexture(mHue);
+					mSatValTextureBucket = bucket;
 				}
+				canvas.drawBitmap(mSatValTexture, null, rect, mSatValPaint);
 
-				int rgb = Color.HSVToColor(new float[] { mHue, 1f, 1f });
-
-				mSatShader = new LinearGradient(rect.left, rect.top, rect.right, rect.top, 0xffffffff, rgb,
-						TileMode.CLAMP);
-				ComposeShader mShader = new ComposeShader(mValShader, mSatShader, PorterDuff.Mode.MULTIPLY);
-				mSatValPaint.setShader(mShader);
-
-				canvas.drawRect(rect, mSatValPaint);
-
-				Point p = satValToPoint(mSat, mVal);
+				final Point p = mTrackerPoint;
+				satValToPoint(mSat, mVal, p);
 
 				mSatValTrackerPaint.setColor(0xff000000);
 				canvas.drawCircle(p.x, p.y, PALETTE_CIRCLE_TRACKER_RADIUS - 1f * mDensity, mSatValTrackerPaint);
@@ -1084,25 +1419,17 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 			}
 
-			private Point hueToPoint(float hue) {
+			private void hueToPoint(float hue, Point p) {
 
 				final RectF rect = mHueRect;
 				final float height = rect.height();
 
-				Point p = new Point();
-
 				p.y = (int) (height - hue * height / 360f + rect.top);
 				p.x = (int) rect.left;
-
-				return p;
 			}
 
 			private void init() {
 
-				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-					new MethodsCompat().setLayerType(this, LAYER_TYPE_SOFTWARE, new Paint());
-				}
-				
 				mDensity = getContext().getResources().getDisplayMetrics().density;
 				PALETTE_CIRCLE_TRACKER_RADIUS *= mDensity;
 				RECTANGLE_TRACKER_OFFSET *= mDensity;
@@ -1112,6 +1439,11 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 				mDrawingOffset = calculateRequiredOffset();
 
+				Display display = ((WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE))
+						.getDefaultDisplay();
+				float refreshRate = display.getRefreshRate();
+				mFrameIntervalMillis = Math.round(1000 / (refreshRate > 0 ? refreshRate : 60f));
+
 				initPaintTools();
 
 				// Needed for receiving trackball motion events.
@@ -1122,8 +1454,10 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 			private void initPaintTools() {
 
 				mSatValPaint = new Paint();
+				mSatValPaint.setFilterBitmap(true);
 				mSatValTrackerPaint = new Paint();
 				mHuePaint = new Paint();
+				mHuePaint.setFilterBitmap(true);
 				mHueTrackerPaint = new Paint();
 				mAlphaPaint = new Paint();
 				mAlphaTextPaint = new Paint();
@@ -1146,9 +1480,9 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 			}
 
-			private boolean moveTrackersIfNeeded(MotionEvent event) {
+			private boolean moveTrackersIfNeeded(float x, float y) {
 
-				if (mStartTouchPoint == null) return false;
+				if (!mTracking) return false;
 
 				boolean update = false;
 
@@ -1158,14 +1492,15 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 				if (mHueRect.contains(startX, startY)) {
 					mLastTouchedPanel = PANEL_HUE;
 
-					mHue = pointToHue(event.getY());
+					mHue = pointToHue(y);
 
 					update = true;
 				} else if (mSatValRect.contains(startX, startY)) {
 
 					mLastTouchedPanel = PANEL_SAT_VAL;
 
-					float[] result = pointToSatVal(event.getX(), event.getY());
+					final float[] result = mHsv;
+					pointToSatVal(x, y, result);
 
 					mSat = result[0];
 					mVal = result[1];
@@ -1175,7 +1510,7 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 
 					mLastTouchedPanel = PANEL_ALPHA;
 
-					mAlpha = pointToAlpha((int) event.getX());
+					mAlpha = pointToAlpha((int) x);
 
 					update = true;
 				}
@@ -1184,81 +1519,42 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 			}
 
 			private int pointToAlpha(int x) {
-
 				final RectF rect = mAlphaRect;
-				final int width = (int) rect.width();
-
-				if (x < rect.left) {
-					x = 0;
-				} else if (x > rect.right) {
-					x = width;
-				} else {
-					x = x - (int) rect.left;
-				}
-
-				return 0xff - x * 0xff / width;
-
+				return ColorPanelMapping.pointToAlpha(x, rect.left, rect.right);
 			}
 
 			private float pointToHue(float y) {
-
 				final RectF rect = mHueRect;
-
-				float height = rect.height();
-
-				if (y < rect.top) {
-					y = 0f;
-				} else if (y > rect.bottom) {
-					y = height;
-				} else {
-					y = y - rect.top;
-				}
-
-				return 360f - y * 360f / height;
+				return ColorPanelMapping.pointToHue(y, rect.top, rect.bottom);
 			}
 
-			private float[] pointToSatVal(float x, float y) {
-
+			/**
+			 * Convert a point to saturation and value, written to the first
+			 * two elements of the given array.
+			 */
+			private void pointToSatVal(float x, float y, float[] result) {
 				final RectF rect = mSatValRect;
-				float[] result = new float[2];
-
-				float width = rect.width();
-				float height = rect.height();
-
-				if (x < rect.left) {
-					x = 0f;
-				} else if (x > rect.right) {
-					x = width;
-				} else {
-					x = x - rect.left;
-				}
-
-				if (y < rect.top) {
-					y = 0f;
-				} else if (y > rect.bottom) {
-					y = height;
-				} else {
-					y = y - rect.top;
-				}
+				ColorPanelMapping.pointToSatVal(x, y, rect.left, rect.top, rect.right, rect.bottom, result);
+			}
 
-				result[0] = 1.f / width * x;
-				result[1] = 1.f - 1.f / height * y;
+			private void queueTouchUpdate(float x, float y) {
 
-				return result;
+				mPendingTouchX = x;
+				mPendingTouchY = y;
+				if (mTouchPending) return;
+				mTouchPending = true;
+				final long delay = mLastTouchUpdateTime + mFrameIntervalMillis - SystemClock.uptimeMillis();
+				postDelayed(mTouchUpdateCallback, Math.max(0, delay));
 			}
 
-			private Point satValToPoint(float sat, float val) {
+			private void satValToPoint(float sat, float val, Point p) {
 
 				final RectF rect = mSatValRect;
 				final float height = rect.height();
 				final float width = rect.width();
 
-				Point p = new Point();
-
 				p.x = (int) (sat * width + rect.left);
 				p.y = (int) ((1f - val) * height + rect.top);
-
-				return p;
 			}
 
 			private void setUpAlphaRect() {
@@ -1272,9 +1568,12 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 				float bottom = dRect.bottom - BORDER_WIDTH_PX;
 				float right = dRect.right - BORDER_WIDTH_PX;
 
-				mAlphaRect = new RectF(left, top, right, bottom);
+				if (mAlphaRect == null) {
+					mAlphaRect = new RectF();
+					mAlphaPattern = new AlphaPatternDrawable((int) (5 * mDensity));
+				}
+				mAlphaRect.set(left, top, right, bottom);
 
-				mAlphaPattern = new AlphaPatternDrawable((int) (5 * mDensity));
 				mAlphaPattern.setBounds(Math.round(mAlphaRect.left), Math.round(mAlphaRect.top),
 						Math.round(mAlphaRect.right), Math.round(mAlphaRect.bottom));
 
@@ -1290,7 +1589,7 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 						- (mShowAlphaPanel ? PANEL_SPACING + ALPHA_PANEL_HEIGHT : 0);
 				float right = dRect.right - BORDER_WIDTH_PX;
 
-				mHueRect = new RectF(left, top, right, bottom);
+				mHueRect.set(left, top, right, bottom);
 			}
 
 			private void setUpSatValRect() {
@@ -1307,10 +1606,45 @@ public class ColorPickerPreference extends Preference implements Preference.OnPr
 				float bottom = top + panelSide;
 				float right = left + panelSide;
 
-				mSatValRect = new RectF(left, top, right, bottom);
+				mSatValRect.set(left, top, right, bottom);
 			}
 
 		}
 
 	}
+
+	/**
+	 * Interface definition for a callback receiving the colors picked while the
+	 * user drags in the color picker dialog, before they are confirmed.
+	 */
+	public interface OnLiveColorChangeListener {
+
+		void onLiveColorChange(ColorPickerPreference preference, int color);
+	}
+
+	/**
+	 * Receives the metrics of a color picker. Called on the UI thread, while
+	 * drawing or handling touch events, so it should return quickly.
+	 */
+	public interface OnColorPickerMetricsListener {
+
+		/**
+		 * @param durationMicros time spent in onDraw.
+		 */
+		void onFrameDrawn(long durationMicros);
+
+		/**
+		 * @param resource {@link ColorPickerMetrics#RESOURCE_SAT_VAL_TEXTURE} or
+		 *            {@link ColorPickerMetrics#RESOURCE_ALPHA_STRIP}.
+		 */
+		void onResourceRebuilt(int resource);
+
+		/**
+		 * @param latencyMicros time between the touch sample and the
+		 *            invalidation of the view.
+		 * @param skippedSamples number of older samples, historical ones
+		 *            included, skipped in favor of this one.
+		 */
+		void onTouchApplied(long latencyMicros, int skippedSamples);
+	}
 }
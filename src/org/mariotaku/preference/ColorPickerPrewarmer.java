@@ -0,0 +1,69 @@
+package org.mariotaku.preference;
+
+import android.content.res.Resources;
+import android.os.AsyncTask;
+
+/**
+ * Builds the process-wide render resources of the color picker on a background
+ * thread: the hue table and strip, the checkerboard tile and, on request, the
+ * saturation/value texture of a color. They are all published through
+ * synchronized or volatile accessors, so the UI thread sees them fully built
+ * and the first dialog doesn't have to render them while opening.
+ */
+final class ColorPickerPrewarmer implements Runnable {
+
+	private static boolean sSharedResourcesRequested;
+	private static int sLastRgb = -1;
+
+	private final boolean mSharedResources;
+	private final boolean mTexture;
+	private final int mColor;
+
+	private ColorPickerPrewarmer(boolean sharedResources, boolean texture, int color) {
+		mSharedResources = sharedResources;
+		mTexture = texture;
+		mColor = color;
+	}
+
+	@Override
+	public void run() {
+		if (mSharedResources) {
+			ColorPanelRasterizer.getHueTable();
+			HueStripBitmap.get();
+			// Cell size of the previews and of the alpha panel.
+			CheckerboardTile.getTile((int) (5 * Resources.getSystem().getDisplayMetrics().density));
+		}
+		if (mTexture) {
+			final float[] hsv = new float[3];
+			ColorMath.argbToHsv(mColor, hsv);
+			SatValTextureCache.getTexture(hsv[0]);
+		}
+	}
+
+	/**
+	 * Prewarm the shared resources and the texture needed to show a color,
+	 * unless it was the last color prewarmed.
+	 */
+	static void prewarm(int color) {
+		final boolean sharedResources;
+		synchronized (ColorPickerPrewarmer.class) {
+			final int rgb = color & 0xffffff;
+			if (rgb == sLastRgb) return;
+			sharedResources = !sSharedResourcesRequested;
+			sSharedResourcesRequested = true;
+			sLastRgb = rgb;
+		}
+		AsyncTask.THREAD_POOL_EXECUTOR.execute(new ColorPickerPrewarmer(sharedResources, true, color));
+	}
+
+	/**
+	 * Prewarm the resources shared by every color picker, once per process.
+	 */
+	static void prewarmSharedResources() {
+		synchronized (ColorPickerPrewarmer.class) {
+			if (sSharedResourcesRequested) return;
+			sSharedResourcesRequested = true;
+		}
+		AsyncTask.THREAD_POOL_EXECUTOR.execute(new ColorPickerPrewarmer(true, false, 0));
+	}
+}
@@ -0,0 +1,110 @@
+package org.mariotaku.preference;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Paint.Style;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * A drawable that shows a color over a white and gray chessboard pattern,
+ * surrounded by a border. Everything is drawn straight onto the canvas, and
+ * the color can be changed with {@link #setColor(int)} without allocating.
+ */
+public class ColorSwatchDrawable extends Drawable {
+
+	private final Paint mPaint = new Paint();
+	private final Paint mPatternPaint;
+	private final Matrix mPatternMatrix = new Matrix();
+
+	private final int mSize;
+	private final int mBorderColor;
+	private final int mBorderWidth;
+
+	private int mColor;
+
+	/**
+	 * @param size intrinsic width and height in pixels.
+	 * @param cellSize size of the chessboard squares in pixels.
+	 * @param borderColor color of the border.
+	 * @param borderWidth width of the border in pixels.
+	 */
+	public ColorSwatchDrawable(int size, int cellSize, int borderColor, int borderWidth) {
+		mSize = size;
+		mPatternPaint = CheckerboardTile.createPaint(cellSize);
+		mBorderColor = borderColor;
+		mBorderWidth = borderWidth;
+	}
+
+	@Override
+	public void draw(Canvas canvas) {
+		final Rect bounds = getBounds();
+		if (bounds.isEmpty()) return;
+		final int left = bounds.left + mBorderWidth, top = bounds.top + mBorderWidth;
+		final int right = bounds.right - mBorderWidth, bottom = bounds.bottom - mBorderWidth;
+		final Paint paint = mPaint;
+		paint.setStyle(Style.FILL);
+		if (Color.alpha(mColor) != 0xff) {
+			canvas.drawRect(left, top, right, bottom, mPatternPaint);
+		}
+		paint.setColor(mColor);
+		canvas.drawRect(left, top, right, bottom, paint);
+		if (mBorderWidth > 0) {
+			paint.setColor(mBorderColor);
+			canvas.drawRect(bounds.left, bounds.top, bounds.right, top, paint);
+			canvas.drawRect(bounds.left, bottom, bounds.right, bounds.bottom, paint);
+			canvas.drawRect(bounds.left, top, left, bottom, paint);
+			canvas.drawRect(right, top, bounds.right, bottom, paint);
+		}
+	}
+
+	public int getColor() {
+		return mColor;
+	}
+
+	@Override
+	public int getIntrinsicHeight() {
+		return mSize;
+	}
+
+	@Override
+	public int getIntrinsicWidth() {
+		return mSize;
+	}
+
+	@Override
+	public int getOpacity() {
+		return PixelFormat.TRANSLUCENT;
+	}
+
+	@Override
+	public void setAlpha(int alpha) {
+
+	}
+
+	/**
+	 * Change the color shown by this drawable, and redraw it if needed.
+	 *
+	 * @param color the new color.
+	 */
+	public void setColor(int color) {
+		if (mColor == color) return;
+		mColor = color;
+		invalidateSelf();
+	}
+
+	@Override
+	public void setColorFilter(ColorFilter cf) {
+
+	}
+
+	@Override
+	protected void onBoundsChange(Rect bounds) {
+		super.onBoundsChange(bounds);
+		CheckerboardTile.setOrigin(mPatternPaint, mPatternMatrix, bounds.left + mBorderWidth, bounds.top + mBorderWidth);
+	}
+}
@@ -0,0 +1,154 @@
+package org.mariotaku.preference;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.Application.ActivityLifecycleCallbacks;
+import android.app.Dialog;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.ViewTreeObserver.OnPreDrawListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-activity pool of the dialogs shown by the preferences of this library.
+ * Each activity keeps at most one dialog of each type, which is rebound to
+ * the clicked preference instead of building a new dialog and view tree every
+ * time. Pooled dialogs are released when their activity is destroyed.
+ *
+ * Must only be used from the UI thread.
+ */
+public final class DialogPool {
+
+	private static final Map<Activity, Map<Class<? extends Dialog>, Dialog>> sPools = new HashMap<Activity, Map<Class<? extends Dialog>, Dialog>>();
+
+	private static boolean sLifecycleCallbacksRegistered;
+
+	private static long sLastOpenLatency = -1;
+
+	private DialogPool() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * @return time in milliseconds between the last preference click and the
+	 *         first frame of its dialog, or -1 if no dialog was shown yet.
+	 */
+	public static long getLastOpenLatencyMillis() {
+		return sLastOpenLatency;
+	}
+
+	/**
+	 * Dismiss and drop the pooled dialogs of an activity. This is done
+	 * automatically when the activity is destroyed.
+	 */
+	public static void release(Activity activity) {
+		final Map<Class<? extends Dialog>, Dialog> pool = sPools.remove(activity);
+		if (pool == null) return;
+		for (Dialog dialog : pool.values()) {
+			if (dialog.isShowing()) {
+				dialog.dismiss();
+			}
+		}
+	}
+
+	/**
+	 * Get the pooled dialog of the given type for a context.
+	 *
+	 * @return the dialog, or null if there is none yet.
+	 */
+	static <T extends Dialog> T get(Context context, Class<T> type) {
+		final Map<Class<? extends Dialog>, Dialog> pool = sPools.get(context);
+		return pool != null ? type.cast(pool.get(type)) : null;
+	}
+
+	/**
+	 * Keep a dialog for later reuse. Dialogs of contexts which aren't
+	 * activities are not pooled, since their lifetime is unknown.
+	 */
+	static void put(Context context, Dialog dialog) {
+		if (!(context instanceof Activity)) return;
+		final Activity activity = (Activity) context;
+		if (!registerLifecycleCallbacks(activity)) return;
+		Map<Class<? extends Dialog>, Dialog> pool = sPools.get(activity);
+		if (pool == null) {
+			pool = new HashMap<Class<? extends Dialog>, Dialog>();
+			sPools.put(activity, pool);
+		}
+		pool.put(dialog.getClass(), dialog);
+	}
+
+	/**
+	 * Show a dialog and record the time between the click and its first
+	 * frame.
+	 *
+	 * @param clickTime uptime in milliseconds of the click opening the dialog.
+	 */
+	static void show(Dialog dialog, final long clickTime) {
+		dialog.show();
+		final View decorView = dialog.getWindow().getDecorView();
+		decorView.getViewTreeObserver().addOnPreDrawListener(new OnPreDrawListener() {
+
+			@Override
+			public boolean onPreDraw() {
+				sLastOpenLatency = SystemClock.uptimeMillis() - clickTime;
+				final ViewTreeObserver observer = decorView.getViewTreeObserver();
+				if (observer.isAlive()) {
+					observer.removeOnPreDrawListener(this);
+				}
+				return true;
+			}
+		});
+	}
+
+	private static boolean registerLifecycleCallbacks(Activity activity) {
+		if (sLifecycleCallbacksRegistered) return true;
+		final Application application = activity.getApplication();
+		if (application == null) return false;
+		application.registerActivityLifecycleCallbacks(new ReleaseOnDestroyCallbacks());
+		sLifecycleCallbacksRegistered = true;
+		return true;
+	}
+
+	private static final class ReleaseOnDestroyCallbacks implements ActivityLifecycleCallbacks {
+
+		@Override
+		public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+
+		}
+
+		@Override
+		public void onActivityDestroyed(Activity activity) {
+			release(activity);
+		}
+
+		@Override
+		public void onActivityPaused(Activity activity) {
+
+		}
+
+		@Override
+		public void onActivityResumed(Activity activity) {
+
+		}
+
+		@Override
+		public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+
+		}
+
+		@Override
+		public void onActivityStarted(Activity activity) {
+
+		}
+
+		@Override
+		public void onActivityStopped(Activity activity) {
+
+		}
+	}
+}
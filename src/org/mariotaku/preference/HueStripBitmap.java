@@ -0,0 +1,28 @@
+package org.mariotaku.preference;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+/**
+ * Process-wide pre-rendered hue strip, one pixel wide and one pixel per degree
+ * high. Every color picker draws it scaled to its hue panel, so the strip is
+ * only built once per process.
+ */
+final class HueStripBitmap {
+
+	private static Bitmap sBitmap;
+
+	private HueStripBitmap() {
+		throw new AssertionError();
+	}
+
+	static synchronized Bitmap get() {
+		if (sBitmap == null) {
+			final int height = ColorPanelRasterizer.HUE_TABLE_SIZE;
+			final int[] pixels = new int[height];
+			ColorPanelRasterizer.renderHueStrip(pixels, 0, height);
+			sBitmap = Bitmap.createBitmap(pixels, 1, height, Config.ARGB_8888);
+		}
+		return sBitmap;
+	}
+}
@@ -0,0 +1,43 @@
+package org.mariotaku.preference;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+/**
+ * A string attribute read from XML, which is either a literal or a string
+ * resource. Resource references are detected without looking them up, and
+ * only resolved the first time the string is needed.
+ */
+final class LazyStringAttribute {
+
+	private final int mResId;
+	private String mValue;
+
+	private LazyStringAttribute(int resId, String value) {
+		mResId = resId;
+		mValue = value;
+	}
+
+	/**
+	 * @return the resolved string, loaded from resources and cached on first
+	 *         call if the attribute is a reference.
+	 */
+	String get(Context context) {
+		if (mValue == null && mResId != 0) {
+			mValue = context.getString(mResId);
+		}
+		return mValue;
+	}
+
+	/**
+	 * Read a string attribute.
+	 *
+	 * @return the attribute, or null if it isn't set.
+	 */
+	static LazyStringAttribute read(AttributeSet attrs, String namespace, String name) {
+		final int resId = attrs.getAttributeResourceValue(namespace, name, 0);
+		if (resId != 0) return new LazyStringAttribute(resId, null);
+		final String value = attrs.getAttributeValue(namespace, name);
+		return value != null ? new LazyStringAttribute(0, value) : null;
+	}
+}
@@ -0,0 +1,35 @@
+package org.mariotaku.preference;
+
+import java.util.Arrays;
+
+/**
+ * Copy-on-write listener arrays. Listeners are added and removed by replacing
+ * the array, so dispatching iterates over a stable array without copying or
+ * allocating, even if a listener changes the registrations.
+ */
+final class ListenerArrays {
+
+	private ListenerArrays() {
+		throw new AssertionError();
+	}
+
+	static <T> T[] add(T[] listeners, T listener) {
+		if (listener == null) throw new NullPointerException();
+		for (T l : listeners) {
+			if (l == listener) return listeners;
+		}
+		final T[] result = Arrays.copyOf(listeners, listeners.length + 1);
+		result[listeners.length] = listener;
+		return result;
+	}
+
+	static <T> T[] remove(T[] listeners, T listener) {
+		for (int i = 0, j = listeners.length; i < j; i++) {
+			if (listeners[i] != listener) continue;
+			final T[] result = Arrays.copyOf(listeners, j - 1);
+			System.arraycopy(listeners, i + 1, result, i, j - i - 1);
+			return result;
+		}
+		return listeners;
+	}
+}
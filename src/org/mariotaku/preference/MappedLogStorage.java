@@ -0,0 +1,529 @@
+package org.mariotaku.preference;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * {@link PreferenceStorage} keeping values in a memory-mapped, append-only
+ * log. Values are held in memory once the log is loaded, and writing a batch
+ * of values only appends a few fixed-width records instead of rewriting the
+ * whole file. Applied values are read from memory until they are written.
+ *
+ * The log starts with a header, followed by records which all end with a
+ * CRC32 of their content:
+ * <ul>
+ * <li>key records, which assign the next key id to a UTF-8 key;</li>
+ * <li>16 bytes int and float records, holding a key id and a value;</li>
+ * <li>16 bytes commit records, ending each written batch.</li>
+ * </ul>
+ * When loading, records are only applied up to the last valid commit record,
+ * and anything after it is truncated. A batch interrupted by a crash is
+ * therefore either fully applied or dropped. The log is compacted into a new
+ * file, which atomically replaces the old one, once it grows past twice the
+ * size of its live content.
+ */
+public final class MappedLogStorage implements PreferenceStorage {
+
+	private static final String LOGTAG = "MappedLogStorage";
+
+	private static final int MAGIC = 0x4d504c53;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+
+	private static final byte TYPE_KEY = 'K';
+	private static final byte TYPE_INT = 'I';
+	private static final byte TYPE_FLOAT = 'F';
+	private static final byte TYPE_COMMIT = 'C';
+
+	private static final int FIXED_RECORD_SIZE = 16;
+	private static final int MAX_KEY_LENGTH = 0xffff;
+
+	private static final int INITIAL_CAPACITY = 16 * 1024;
+	private static final int COMPACT_MIN_SIZE = 64 * 1024;
+
+	private static final Map<String, MappedLogStorage> sInstances = new HashMap<String, MappedLogStorage>();
+
+	private final File mFile;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final CopyOnWriteArrayList<OnChangeListener> mListeners = new CopyOnWriteArrayList<OnChangeListener>();
+
+	/*
+	 * In-memory state, guarded by this. Values are indexed by key id, and a
+	 * type of 0 means the key has no value.
+	 */
+	private final Map<String, Integer> mKeyIds = new HashMap<String, Integer>();
+	private final ArrayList<String> mKeys = new ArrayList<String>();
+	private byte[] mTypes = new byte[16];
+	private int[] mValues = new int[16];
+	private int mLiveSize;
+	private final Map<String, Object> mApplied = new HashMap<String, Object>();
+
+	/*
+	 * File state, guarded by mWriteLock. Readers never wait for the disk.
+	 */
+	private final Object mWriteLock = new Object();
+	private final CRC32 mCrc = new CRC32();
+	private byte[] mScratch = new byte[FIXED_RECORD_SIZE];
+	private ByteBuffer mScratchBuffer = ByteBuffer.wrap(mScratch);
+	private RandomAccessFile mRandomAccessFile;
+	private MappedByteBuffer mBuffer;
+	private int mPosition;
+	private int mSyncCount;
+
+	private MappedLogStorage(File file) {
+		mFile = file;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws IllegalArgumentException if the key is too long to be logged.
+	 */
+	@Override
+	public void apply(String key, Object value) {
+		if (!(value instanceof Integer) && !(value instanceof Float)) return;
+		synchronized (this) {
+			if (!mKeyIds.containsKey(key) && isTooLong(key)) {
+				throw new IllegalArgumentException("Key is too long: " + key);
+			}
+			if (value.equals(mApplied.put(key, value))) return;
+		}
+		for (OnChangeListener listener : mListeners) {
+			listener.onStorageChanged(this, key);
+		}
+	}
+
+	@Override
+	public synchronized boolean contains(String key) {
+		if (mApplied.containsKey(key)) return true;
+		final Integer id = mKeyIds.get(key);
+		return id != null && mTypes[id] != 0;
+	}
+
+	@Override
+	public synchronized float getFloat(String key, float defValue) {
+		final Object applied = mApplied.get(key);
+		if (applied != null) return (Float) applied;
+		final Integer id = mKeyIds.get(key);
+		if (id == null || mTypes[id] == 0) return defValue;
+		if (mTypes[id] != TYPE_FLOAT) throw new ClassCastException(key + " is not a float");
+		return Float.intBitsToFloat(mValues[id]);
+	}
+
+	@Override
+	public synchronized int getInt(String key, int defValue) {
+		final Object applied = mApplied.get(key);
+		if (applied != null) return (Integer) applied;
+		final Integer id = mKeyIds.get(key);
+		if (id == null || mTypes[id] == 0) return defValue;
+		if (mTypes[id] != TYPE_INT) throw new ClassCastException(key + " is not an int");
+		return mValues[id];
+	}
+
+	/**
+	 * @return size in bytes of the log, including records which compaction
+	 *         would drop.
+	 */
+	public int getLogSize() {
+		synchronized (mWriteLock) {
+			return mPosition;
+		}
+	}
+
+	/**
+	 * @return number of times the log was synced to the disk, once per
+	 *         written batch and once per compaction.
+	 */
+	int getSyncCount() {
+		synchronized (mWriteLock) {
+			return mSyncCount;
+		}
+	}
+
+	@Override
+	public void registerOnChangeListener(OnChangeListener listener) {
+		mListeners.addIfAbsent(listener);
+	}
+
+	@Override
+	public void unregisterOnChangeListener(OnChangeListener listener) {
+		mListeners.remove(listener);
+	}
+
+	@Override
+	public boolean write(Map<String, Object> values) {
+		final ArrayList<String> changed = new ArrayList<String>(values.size());
+		synchronized (mWriteLock) {
+			final int start = mPosition;
+			// The batch is only applied in memory once it is on disk, so
+			// readers never see values, or key ids, which may be lost.
+			final ArrayList<String> stagedKeys = new ArrayList<String>();
+			final ArrayList<Integer> stagedKeyLengths = new ArrayList<Integer>();
+			final String[] keys = new String[values.size()];
+			final int[] ids = new int[values.size()];
+			final byte[] types = new byte[values.size()];
+			final int[] bits = new int[values.size()];
+			int count = 0;
+			try {
+				final int firstNewId;
+				synchronized (this) {
+					firstNewId = mKeys.size();
+				}
+				for (Map.Entry<String, Object> entry : values.entrySet()) {
+					final Object value = entry.getValue();
+					if (value instanceof Integer) {
+						types[count] = TYPE_INT;
+						bits[count] = (Integer) value;
+					} else if (value instanceof Float) {
+						types[count] = TYPE_FLOAT;
+						bits[count] = Float.floatToRawIntBits((Float) value);
+					} else {
+						continue;
+					}
+					final String key = entry.getKey();
+					Integer id;
+					synchronized (this) {
+						id = mKeyIds.get(key);
+					}
+					if (id == null) {
+						final byte[] bytes = key.getBytes("UTF-8");
+						if (bytes.length > MAX_KEY_LENGTH) {
+							// Rejected when applied, unless written directly.
+							Log.w(LOGTAG, "Key is too long, skipping it: " + key);
+							continue;
+						}
+						ensureCapacity(getKeyRecordSize(bytes.length));
+						mBuffer.position(mPosition);
+						putKeyRecord(mBuffer, bytes);
+						mPosition = mBuffer.position();
+						id = firstNewId + stagedKeys.size();
+						stagedKeys.add(key);
+						stagedKeyLengths.add(bytes.length);
+					}
+					ensureCapacity(FIXED_RECORD_SIZE);
+					mBuffer.position(mPosition);
+					putFixedRecord(mBuffer, types[count], id, bits[count]);
+					mPosition = mBuffer.position();
+					keys[count] = key;
+					ids[count] = id;
+					count++;
+				}
+				if (count == 0) return true;
+				ensureCapacity(FIXED_RECORD_SIZE);
+				mBuffer.position(mPosition);
+				putFixedRecord(mBuffer, TYPE_COMMIT, count, 0);
+				mPosition = mBuffer.position();
+				mBuffer.force();
+				mSyncCount++;
+			} catch (IOException e) {
+				Log.w(LOGTAG, "Failed to write " + mFile, e);
+				rollback(start);
+				return false;
+			} catch (RuntimeException e) {
+				rollback(start);
+				throw e;
+			}
+			for (int i = 0, j = stagedKeys.size(); i < j; i++) {
+				addKey(stagedKeys.get(i), stagedKeyLengths.get(i));
+			}
+			synchronized (this) {
+				for (int i = 0; i < count; i++) {
+					final boolean valueChanged = setValue(ids[i], types[i], bits[i]);
+					// Listeners were notified when the value was applied.
+					final Object applied = mApplied.get(keys[i]);
+					if (applied == null) {
+						if (valueChanged) {
+							changed.add(keys[i]);
+						}
+					} else if (applied.equals(values.get(keys[i]))) {
+						mApplied.remove(keys[i]);
+					}
+				}
+			}
+			notifyChanged(changed);
+			try {
+				compactIfNeeded();
+			} catch (IOException e) {
+				// The batch is committed, the log is compacted on a later
+				// write.
+				Log.w(LOGTAG, "Failed to compact " + mFile, e);
+			}
+		}
+		return true;
+	}
+
+	private void compactIfNeeded() throws IOException {
+		final int liveSize;
+		synchronized (this) {
+			liveSize = mLiveSize;
+		}
+		if (mPosition < COMPACT_MIN_SIZE || mPosition < liveSize * 2) return;
+		final ByteBuffer out = ByteBuffer.allocate(liveSize);
+		out.putInt(MAGIC).putInt(VERSION);
+		synchronized (this) {
+			int count = 0;
+			for (int id = 0, j = mKeys.size(); id < j; id++) {
+				putKeyRecord(out, mKeys.get(id).getBytes("UTF-8"));
+			}
+			for (int id = 0, j = mKeys.size(); id < j; id++) {
+				if (mTypes[id] == 0) continue;
+				putFixedRecord(out, mTypes[id], id, mValues[id]);
+				count++;
+			}
+			putFixedRecord(out, TYPE_COMMIT, count, 0);
+		}
+		out.flip();
+		final File tmp = new File(mFile.getPath() + ".tmp");
+		final RandomAccessFile tmpFile = new RandomAccessFile(tmp, "rw");
+		try {
+			final FileChannel channel = tmpFile.getChannel();
+			channel.truncate(0);
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			channel.force(true);
+			mSyncCount++;
+		} finally {
+			tmpFile.close();
+		}
+		if (!tmp.renameTo(mFile)) throw new IOException("Failed to replace " + mFile);
+		mRandomAccessFile.close();
+		mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+		mPosition = liveSize;
+		map(Math.max(INITIAL_CAPACITY, liveSize * 2));
+	}
+
+	private void ensureCapacity(int size) throws IOException {
+		if (mPosition + size <= mBuffer.capacity()) return;
+		map(Math.max(mBuffer.capacity() * 2, mPosition + size));
+	}
+
+	private synchronized int addKey(String key, int length) {
+		final int id = mKeys.size();
+		mKeys.add(key);
+		mKeyIds.put(key, id);
+		if (id >= mTypes.length) {
+			final byte[] types = new byte[mTypes.length * 2];
+			final int[] values = new int[mValues.length * 2];
+			System.arraycopy(mTypes, 0, types, 0, mTypes.length);
+			System.arraycopy(mValues, 0, values, 0, mValues.length);
+			mTypes = types;
+			mValues = values;
+		}
+		mLiveSize += getKeyRecordSize(length);
+		return id;
+	}
+
+	private void load() throws IOException {
+		mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+		final FileChannel channel = mRandomAccessFile.getChannel();
+		final long length = channel.size();
+		if (length > Integer.MAX_VALUE / 2) throw new IOException(mFile + " is too large");
+		final ByteBuffer data = ByteBuffer.allocate((int) length);
+		while (data.hasRemaining() && channel.read(data) >= 0) {
+			// Read the whole log.
+		}
+		data.flip();
+		mLiveSize = HEADER_SIZE + FIXED_RECORD_SIZE;
+		int committed = 0;
+		if (data.limit() >= HEADER_SIZE && data.getInt(0) == MAGIC && data.getInt(4) == VERSION) {
+			committed = replay(data);
+		} else if (length > 0) {
+			Log.w(LOGTAG, mFile + " is not a valid log, discarding it");
+		}
+		if (committed < length) {
+			// Drop the records of interrupted batches, so they can't be
+			// mistaken for records appended later.
+			channel.truncate(Math.max(committed, 0));
+		}
+		mPosition = Math.max(committed, HEADER_SIZE);
+		map(Math.max(INITIAL_CAPACITY, mPosition * 2));
+		if (committed == 0) {
+			mBuffer.putInt(0, MAGIC);
+			mBuffer.putInt(4, VERSION);
+			mBuffer.force();
+		}
+	}
+
+	private void map(int capacity) throws IOException {
+		mBuffer = mRandomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, capacity);
+	}
+
+	private static boolean isTooLong(String key) {
+		// A UTF-8 char takes at most 3 bytes.
+		if (key.length() * 3 <= MAX_KEY_LENGTH) return false;
+		try {
+			return key.getBytes("UTF-8").length > MAX_KEY_LENGTH;
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Notify the listeners of a written batch on the main thread.
+	 */
+	private void notifyChanged(final ArrayList<String> keys) {
+		if (keys.isEmpty() || mListeners.isEmpty()) return;
+		mHandler.post(new Runnable() {
+
+			@Override
+			public void run() {
+				for (String key : keys) {
+					for (OnChangeListener listener : mListeners) {
+						listener.onStorageChanged(MappedLogStorage.this, key);
+					}
+				}
+			}
+		});
+	}
+
+	private void putFixedRecord(ByteBuffer target, byte type, int id, int bits) {
+		final ByteBuffer record = mScratchBuffer;
+		record.clear();
+		record.put(type).put((byte) 0).putShort((short) 0).putInt(id).putInt(bits);
+		putRecord(target, FIXED_RECORD_SIZE);
+	}
+
+	private void putKeyRecord(ByteBuffer target, byte[] bytes) {
+		final int size = getKeyRecordSize(bytes.length);
+		if (mScratch.length < size) {
+			mScratch = new byte[size];
+			mScratchBuffer = ByteBuffer.wrap(mScratch);
+		}
+		final ByteBuffer record = mScratchBuffer;
+		record.clear();
+		record.put(TYPE_KEY).put((byte) 0).putShort((short) bytes.length).put(bytes);
+		while (record.position() < size - 4) {
+			record.put((byte) 0);
+		}
+		putRecord(target, size);
+	}
+
+	/**
+	 * Append the checksum to the record in the scratch buffer, and copy the
+	 * record to the target.
+	 */
+	private void putRecord(ByteBuffer target, int size) {
+		mCrc.reset();
+		mCrc.update(mScratch, 0, size - 4);
+		mScratchBuffer.putInt(size - 4, (int) mCrc.getValue());
+		target.put(mScratch, 0, size);
+	}
+
+	/**
+	 * Apply the committed records of a log.
+	 *
+	 * @return end of the last commit record.
+	 */
+	private int replay(ByteBuffer data) throws IOException {
+		final ArrayList<String> stagedKeys = new ArrayList<String>();
+		final ArrayList<Integer> stagedKeyLengths = new ArrayList<Integer>();
+		final ArrayList<int[]> stagedValues = new ArrayList<int[]>();
+		final int limit = data.limit();
+		int pos = HEADER_SIZE, committed = HEADER_SIZE;
+		while (pos + FIXED_RECORD_SIZE <= limit) {
+			final byte type = data.get(pos);
+			final int size = type == TYPE_KEY ? getKeyRecordSize(data.getShort(pos + 2) & 0xffff) : FIXED_RECORD_SIZE;
+			if (pos + size > limit || !isChecksumValid(data, pos, size)) {
+				break;
+			}
+			if (type == TYPE_KEY) {
+				stagedKeys.add(new String(data.array(), pos + 4, data.getShort(pos + 2) & 0xffff, "UTF-8"));
+				stagedKeyLengths.add(data.getShort(pos + 2) & 0xffff);
+			} else if (type == TYPE_INT || type == TYPE_FLOAT) {
+				final int id = data.getInt(pos + 4);
+				if (id < 0 || id >= mKeys.size() + stagedKeys.size()) {
+					break;
+				}
+				stagedValues.add(new int[] { type, id, data.getInt(pos + 8) });
+			} else if (type == TYPE_COMMIT) {
+				for (int i = 0, j = stagedKeys.size(); i < j; i++) {
+					addKey(stagedKeys.get(i), stagedKeyLengths.get(i));
+				}
+				for (int[] value : stagedValues) {
+					setValue(value[1], (byte) value[0], value[2]);
+				}
+				stagedKeys.clear();
+				stagedKeyLengths.clear();
+				stagedValues.clear();
+				committed = pos + size;
+			} else {
+				break;
+			}
+			pos += size;
+		}
+		return committed;
+	}
+
+	/**
+	 * Drop the records of a failed batch, so neither a later write nor a
+	 * reload can pick them up.
+	 */
+	private void rollback(int start) {
+		for (int i = start, j = Math.min(mPosition, mBuffer.capacity()); i < j; i++) {
+			mBuffer.put(i, (byte) 0);
+		}
+		mPosition = start;
+	}
+
+	/**
+	 * @return true if the value of the key changed.
+	 */
+	private synchronized boolean setValue(int id, byte type, int bits) {
+		if (mTypes[id] == 0) {
+			mLiveSize += FIXED_RECORD_SIZE;
+		} else if (mTypes[id] == type && mValues[id] == bits) {
+			return false;
+		}
+		mTypes[id] = type;
+		mValues[id] = bits;
+		return true;
+	}
+
+	private boolean isChecksumValid(ByteBuffer data, int pos, int size) {
+		mCrc.reset();
+		mCrc.update(data.array(), pos, size - 4);
+		return (int) mCrc.getValue() == data.getInt(pos + size - 4);
+	}
+
+	/**
+	 * Get the storage of a log file, opening it on first use. The log is
+	 * read on the calling thread when opened, so the first call should not
+	 * be made from the UI thread.
+	 *
+	 * @throws IOException if the log can't be read or created.
+	 */
+	public static MappedLogStorage get(File file) throws IOException {
+		final String path = file.getCanonicalPath();
+		synchronized (sInstances) {
+			MappedLogStorage storage = sInstances.get(path);
+			if (storage == null) {
+				storage = new MappedLogStorage(new File(path));
+				synchronized (storage.mWriteLock) {
+					storage.load();
+				}
+				sInstances.put(path, storage);
+			}
+			return storage;
+		}
+	}
+
+	private static int getKeyRecordSize(int length) {
+		return 4 + (length + 3 & ~3) + 4;
+	}
+}
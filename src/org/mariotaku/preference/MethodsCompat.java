@@ -1,14 +1,65 @@
 package org.mariotaku.preference;
 
-import android.graphics.Paint;
 import android.os.Build;
-import android.view.View;
+
+import java.lang.reflect.Method;
 
 class MethodsCompat {
 
-	public void setLayerType(View view, int layerType, Paint paint) {
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-			view.setLayerType(layerType, paint);
+	private static final int JELLY_BEAN_MR2 = 18;
+
+	private static final Object[] NO_ARGS = new Object[0];
+
+	private static final Method TRACE_BEGIN_SECTION, TRACE_END_SECTION;
+
+	/**
+	 * Whether systrace sections can be emitted, through android.os.Trace on
+	 * API 18 and up. Callers should skip tracing entirely otherwise.
+	 */
+	static final boolean TRACE_AVAILABLE;
+
+	static {
+		Method beginSection = null, endSection = null;
+		if (Build.VERSION.SDK_INT >= JELLY_BEAN_MR2) {
+			try {
+				final Class<?> trace = Class.forName("android.os.Trace");
+				beginSection = trace.getMethod("beginSection", String.class);
+				endSection = trace.getMethod("endSection");
+			} catch (Exception e) {
+				beginSection = null;
+				endSection = null;
+			}
+		}
+		TRACE_BEGIN_SECTION = beginSection;
+		TRACE_END_SECTION = endSection;
+		TRACE_AVAILABLE = beginSection != null && endSection != null;
+	}
+
+	/**
+	 * Arguments of beginSection, reused so tracing a frame doesn't allocate.
+	 */
+	private final Object[] mBeginSectionArgs = new Object[1];
+
+	/**
+	 * Begin a systrace section if {@link #TRACE_AVAILABLE}. Must be balanced
+	 * with {@link #endTraceSection()} on the same thread.
+	 */
+	public void beginTraceSection(String sectionName) {
+		if (!TRACE_AVAILABLE) return;
+		mBeginSectionArgs[0] = sectionName;
+		try {
+			TRACE_BEGIN_SECTION.invoke(null, mBeginSectionArgs);
+		} catch (Exception e) {
+			// Tracing is best effort.
+		}
+	}
+
+	public void endTraceSection() {
+		if (!TRACE_AVAILABLE) return;
+		try {
+			TRACE_END_SECTION.invoke(null, NO_ARGS);
+		} catch (Exception e) {
+			// Tracing is best effort.
 		}
 	}
 }
@@ -0,0 +1,12 @@
+package org.mariotaku.preference;
+
+import android.preference.Preference;
+
+/**
+ * Interface definition for a callback receiving the new value of a float
+ * preference, such as {@link TextSizePreference}, without boxing it.
+ */
+public interface OnFloatValueChangeListener {
+
+	void onFloatValueChange(Preference preference, float value);
+}
@@ -0,0 +1,13 @@
+package org.mariotaku.preference;
+
+import android.preference.Preference;
+
+/**
+ * Interface definition for a callback receiving the new value of an int
+ * preference, such as {@link SeekBarPreference} or
+ * {@link ColorPickerPreference}, without boxing it.
+ */
+public interface OnIntValueChangeListener {
+
+	void onIntValueChange(Preference preference, int value);
+}
@@ -0,0 +1,228 @@
+package org.mariotaku.preference;
+
+import android.preference.Preference;
+import android.preference.PreferenceGroup;
+import android.preference.PreferenceScreen;
+import android.widget.BaseAdapter;
+import android.widget.ListAdapter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Profiles of the values of {@link ColorPickerPreference}s,
+ * {@link SeekBarPreference}s and {@link TextSizePreference}s, such as themes
+ * setting many colors and sizes at once.
+ *
+ * Applying a profile or resetting to defaults changes every value first,
+ * then writes them in one transaction per storage, notifies the listener once
+ * with every changed preference, and rebinds the screen once. The listeners
+ * of the individual preferences are not called.
+ *
+ * Must only be used from the UI thread.
+ */
+public final class PreferenceProfiles {
+
+	private static final int MAGIC = 0x4d505046;
+	private static final int VERSION = 1;
+
+	private static final byte TYPE_INT = 'I';
+	private static final byte TYPE_FLOAT = 'F';
+
+	/**
+	 * Size of a record with an empty key: type, key length and value.
+	 */
+	private static final int MIN_RECORD_SIZE = 1 + 2 + 4;
+
+	private PreferenceProfiles() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Apply a profile created by {@link #snapshot(PreferenceGroup)} to the
+	 * preferences of a screen. Values of keys not found in the screen are
+	 * ignored.
+	 *
+	 * @param listener listener receiving the changed preferences, or null.
+	 * @return number of preferences changed.
+	 * @throws IOException if the profile is malformed or holds a key more than
+	 *             once, in which case no value is applied.
+	 */
+	public static int restore(PreferenceScreen screen, byte[] profile, OnProfileAppliedListener listener)
+			throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(profile));
+		if (in.readInt() != MAGIC) throw new IOException("Not a preference profile");
+		final int version = in.readUnsignedShort();
+		if (version != VERSION) throw new IOException("Unsupported profile version " + version);
+		final int count = in.readInt();
+		if (count < 0 || count > in.available() / MIN_RECORD_SIZE) {
+			throw new IOException("Invalid record count " + count);
+		}
+		// Read every record before applying any, so a malformed profile
+		// leaves the preferences untouched.
+		final byte[] types = new byte[count];
+		final String[] keys = new String[count];
+		final int[] values = new int[count];
+		final Set<String> uniqueKeys = new HashSet<String>();
+		for (int i = 0; i < count; i++) {
+			types[i] = in.readByte();
+			if (types[i] != TYPE_INT && types[i] != TYPE_FLOAT) {
+				throw new IOException("Unknown value type " + types[i]);
+			}
+			keys[i] = in.readUTF();
+			// Snapshots hold a key once, and a preference is reported once.
+			if (!uniqueKeys.add(keys[i])) throw new IOException("Duplicate key " + keys[i]);
+			values[i] = in.readInt();
+		}
+		if (in.available() != 0) throw new IOException("Trailing data after " + count + " records");
+		final Map<String, Preference> preferences = new HashMap<String, Preference>();
+		collect(screen, preferences);
+		final List<Preference> changed = new ArrayList<Preference>();
+		for (int i = 0; i < count; i++) {
+			final Preference preference = preferences.get(keys[i]);
+			if (types[i] == TYPE_INT) {
+				applyInt(preference, values[i], changed);
+			} else {
+				applyFloat(preference, Float.intBitsToFloat(values[i]), changed);
+			}
+		}
+		return commit(screen, changed, listener);
+	}
+
+	/**
+	 * Reset the preferences of a screen to their default values.
+	 *
+	 * @param listener listener receiving the changed preferences, or null.
+	 * @return number of preferences changed.
+	 */
+	public static int resetToDefaults(PreferenceScreen screen, OnProfileAppliedListener listener) {
+		final Map<String, Preference> preferences = new HashMap<String, Preference>();
+		collect(screen, preferences);
+		final List<Preference> changed = new ArrayList<Preference>();
+		for (Preference preference : preferences.values()) {
+			if (preference instanceof ColorPickerPreference) {
+				applyInt(preference, ((ColorPickerPreference) preference).getDefaultValue(), changed);
+			} else if (preference instanceof SeekBarPreference) {
+				applyInt(preference, ((SeekBarPreference) preference).getDefaultValue(), changed);
+			} else if (preference instanceof TextSizePreference) {
+				applyFloat(preference, ((TextSizePreference) preference).getDefaultValue(), changed);
+			}
+		}
+		return commit(screen, changed, listener);
+	}
+
+	/**
+	 * Save the values of the preferences of a group, and of its nested groups,
+	 * into a compact binary profile.
+	 */
+	public static byte[] snapshot(PreferenceGroup group) {
+		final Map<String, Preference> preferences = new HashMap<String, Preference>();
+		collect(group, preferences);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeInt(preferences.size());
+			for (Map.Entry<String, Preference> entry : preferences.entrySet()) {
+				final Preference preference = entry.getValue();
+				if (preference instanceof ColorPickerPreference) {
+					out.writeByte(TYPE_INT);
+					out.writeUTF(entry.getKey());
+					out.writeInt(((ColorPickerPreference) preference).getValue());
+				} else if (preference instanceof SeekBarPreference) {
+					out.writeByte(TYPE_INT);
+					out.writeUTF(entry.getKey());
+					out.writeInt(((SeekBarPreference) preference).getValue());
+				} else if (preference instanceof TextSizePreference) {
+					out.writeByte(TYPE_FLOAT);
+					out.writeUTF(entry.getKey());
+					out.writeInt(Float.floatToIntBits(((TextSizePreference) preference).getValue()));
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			// Not thrown by in-memory streams.
+			throw new AssertionError(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void applyFloat(Preference preference, float value, List<Preference> changed) {
+		if (!(preference instanceof TextSizePreference)) return;
+		final TextSizePreference textSize = (TextSizePreference) preference;
+		if (Float.floatToIntBits(textSize.getValue()) == Float.floatToIntBits(value)) return;
+		textSize.applyValue(value);
+		changed.add(preference);
+	}
+
+	private static void applyInt(Preference preference, int value, List<Preference> changed) {
+		if (preference instanceof ColorPickerPreference) {
+			final ColorPickerPreference colorPicker = (ColorPickerPreference) preference;
+			if (colorPicker.getValue() == value) return;
+			colorPicker.applyValue(value);
+		} else if (preference instanceof SeekBarPreference) {
+			final SeekBarPreference seekBar = (SeekBarPreference) preference;
+			if (seekBar.getValue() == value) return;
+			seekBar.applyValue(value);
+		} else {
+			return;
+		}
+		changed.add(preference);
+	}
+
+	private static boolean isSupported(Preference preference) {
+		return preference instanceof ColorPickerPreference || preference instanceof SeekBarPreference
+				|| preference instanceof TextSizePreference;
+	}
+
+	/**
+	 * Collect the preferences of this library with a key, by key.
+	 */
+	private static void collect(PreferenceGroup group, Map<String, Preference> preferences) {
+		for (int i = 0, j = group.getPreferenceCount(); i < j; i++) {
+			final Preference preference = group.getPreference(i);
+			if (preference instanceof PreferenceGroup) {
+				collect((PreferenceGroup) preference, preferences);
+			} else if (preference.hasKey() && isSupported(preference)) {
+				preferences.put(preference.getKey(), preference);
+			}
+		}
+	}
+
+	private static int commit(PreferenceScreen screen, List<Preference> changed, OnProfileAppliedListener listener) {
+		if (changed.isEmpty()) return 0;
+		// The values were queued by applyValue, write them in one
+		// transaction per storage.
+		PreferenceWriteBatcher.flushInBackground();
+		if (listener != null) {
+			listener.onProfileApplied(changed);
+		}
+		final ListAdapter adapter = screen.getRootAdapter();
+		if (adapter instanceof BaseAdapter) {
+			((BaseAdapter) adapter).notifyDataSetChanged();
+		}
+		return changed.size();
+	}
+
+	/**
+	 * Interface definition for a callback invoked once after a profile is
+	 * applied, or the preferences are reset to their defaults.
+	 */
+	public interface OnProfileAppliedListener {
+
+		/**
+		 * @param changed preferences whose value changed.
+		 */
+		void onProfileApplied(List<Preference> changed);
+	}
+}
@@ -0,0 +1,59 @@
+package org.mariotaku.preference;
+
+import java.util.Map;
+
+/**
+ * Key-value storage backing the preferences of this library. Preferences use
+ * their {@link android.content.SharedPreferences} through
+ * {@link SharedPreferencesStorage} unless another storage is set, such as a
+ * {@link MappedLogStorage}.
+ *
+ * Implementations must be thread safe. Values are only written through
+ * {@link PreferenceWriteBatcher}, which applies them to memory right away and
+ * batches them into calls to {@link #write(Map)} on a background thread.
+ */
+public interface PreferenceStorage {
+
+	/**
+	 * Update a value in memory, where it is read back and reported to the
+	 * listeners right away. It reaches persistent storage with a later call
+	 * to {@link #write(Map)}.
+	 *
+	 * @param value an {@link Integer} or a {@link Float}.
+	 */
+	void apply(String key, Object value);
+
+	boolean contains(String key);
+
+	/**
+	 * @throws ClassCastException if the stored value is not a float.
+	 */
+	float getFloat(String key, float defValue);
+
+	/**
+	 * @throws ClassCastException if the stored value is not an int.
+	 */
+	int getInt(String key, int defValue);
+
+	void registerOnChangeListener(OnChangeListener listener);
+
+	void unregisterOnChangeListener(OnChangeListener listener);
+
+	/**
+	 * Write several values in one transaction.
+	 *
+	 * @param values values to write, which are either {@link Integer}s or
+	 *            {@link Float}s.
+	 * @return true if the values were written to persistent storage.
+	 */
+	boolean write(Map<String, Object> values);
+
+	/**
+	 * Interface definition for a callback invoked on the main thread when a
+	 * stored value changes.
+	 */
+	interface OnChangeListener {
+
+		void onStorageChanged(PreferenceStorage storage, String key);
+	}
+}
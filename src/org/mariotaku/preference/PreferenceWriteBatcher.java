@@ -0,0 +1,287 @@
+package org.mariotaku.preference;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.Application.ActivityLifecycleCallbacks;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Write-behind layer shared by the preferences of this library. Values
+ * persisted by {@link ColorPickerPreference}, {@link SeekBarPreference} and
+ * {@link TextSizePreference} are applied to the memory of their
+ * {@link PreferenceStorage} right away, so the application and the storage
+ * listeners see them at once. Only writing them to persistent storage is
+ * delayed for a short while, then done with a single transaction per storage
+ * on a background thread.
+ *
+ * Pending values are flushed on a background thread when an activity is
+ * paused or stopped, and on the calling thread when the system is about to
+ * kill background processes. They can be flushed at any time with
+ * {@link #flush()}.
+ *
+ * Writes of the value already stored are skipped, so they never cause a
+ * transaction.
+ */
+public final class PreferenceWriteBatcher {
+
+	/**
+	 * Delay in milliseconds between a write and the background flush, writes
+	 * made in the meantime share the same transaction.
+	 */
+	public static final long FLUSH_DELAY_MILLIS = 500;
+
+	private static final Map<PreferenceStorage, Map<String, Object>> sPending = new HashMap<PreferenceStorage, Map<String, Object>>();
+
+	private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+	private static final Runnable sFlushCallback = new Runnable() {
+
+		@Override
+		public void run() {
+			flushInBackground();
+		}
+	};
+
+	private static final Runnable sFlushTask = new Runnable() {
+
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	private static final Object sFlushLock = new Object();
+
+	private static boolean sFlushScheduled;
+	private static Application sLifecycleCallbacksApplication;
+
+	private static int sWriteCount, sSkippedWriteCount, sCommitCount;
+
+	private PreferenceWriteBatcher() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Write all pending values now, on the calling thread.
+	 */
+	public static void flush() {
+		synchronized (sFlushLock) {
+			flushLocked();
+		}
+	}
+
+	/**
+	 * Schedule writing all pending values on a background thread as soon as
+	 * possible.
+	 */
+	public static void flushInBackground() {
+		synchronized (PreferenceWriteBatcher.class) {
+			sHandler.removeCallbacks(sFlushCallback);
+			sFlushScheduled = false;
+		}
+		AsyncTask.SERIAL_EXECUTOR.execute(sFlushTask);
+	}
+
+	/**
+	 * @return number of writes that didn't need an editor transaction of
+	 *         their own.
+	 */
+	public static synchronized int getCoalescedWriteCount() {
+		return Math.max(0, sWriteCount - sCommitCount);
+	}
+
+	/**
+	 * @return number of transactions written.
+	 */
+	public static synchronized int getCommitCount() {
+		return sCommitCount;
+	}
+
+	/**
+	 * @return number of writes skipped because the value was already pending
+	 *         or stored.
+	 */
+	public static synchronized int getSkippedWriteCount() {
+		return sSkippedWriteCount;
+	}
+
+	/**
+	 * @return number of values written by preferences, not counting skipped
+	 *         writes.
+	 */
+	public static synchronized int getWriteCount() {
+		return sWriteCount;
+	}
+
+	static void putFloat(Context context, PreferenceStorage storage, String key, float value) {
+		// Pending values are already applied to the storage.
+		if (isStored(storage, key, value)) {
+			skip();
+		} else {
+			put(context, storage, key, value);
+		}
+	}
+
+	static void putInt(Context context, PreferenceStorage storage, String key, int value) {
+		if (isStored(storage, key, value)) {
+			skip();
+		} else {
+			put(context, storage, key, value);
+		}
+	}
+
+	private static void flushLocked() {
+		final Map<PreferenceStorage, Map<String, Object>> snapshot;
+		synchronized (PreferenceWriteBatcher.class) {
+			if (sPending.isEmpty()) return;
+			snapshot = new HashMap<PreferenceStorage, Map<String, Object>>();
+			for (Map.Entry<PreferenceStorage, Map<String, Object>> entry : sPending.entrySet()) {
+				snapshot.put(entry.getKey(), new HashMap<String, Object>(entry.getValue()));
+			}
+		}
+		for (Map.Entry<PreferenceStorage, Map<String, Object>> entry : snapshot.entrySet()) {
+			// Values which couldn't be written stay pending, and are written
+			// again by the next flush.
+			if (!entry.getKey().write(entry.getValue())) continue;
+			synchronized (PreferenceWriteBatcher.class) {
+				sCommitCount++;
+				removeWritten(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private static boolean isStored(PreferenceStorage storage, String key, float value) {
+		try {
+			return storage.contains(key)
+					&& Float.floatToIntBits(storage.getFloat(key, value)) == Float.floatToIntBits(value);
+		} catch (ClassCastException e) {
+			return false;
+		}
+	}
+
+	private static boolean isStored(PreferenceStorage storage, String key, int value) {
+		try {
+			return storage.getInt(key, ~value) == value;
+		} catch (ClassCastException e) {
+			return false;
+		}
+	}
+
+	private static synchronized void skip() {
+		sSkippedWriteCount++;
+	}
+
+	private static void put(Context context, PreferenceStorage storage, String key, Object value) {
+		// Applied outside of the lock, since the storage calls its listeners.
+		storage.apply(key, value);
+		synchronized (PreferenceWriteBatcher.class) {
+			Map<String, Object> values = sPending.get(storage);
+			if (values == null) {
+				values = new HashMap<String, Object>();
+				sPending.put(storage, values);
+			}
+			values.put(key, value);
+			sWriteCount++;
+			registerLifecycleCallbacks(context);
+			if (!sFlushScheduled) {
+				sFlushScheduled = true;
+				sHandler.postDelayed(sFlushCallback, FLUSH_DELAY_MILLIS);
+			}
+		}
+	}
+
+	private static void registerLifecycleCallbacks(Context context) {
+		final Context appContext = context.getApplicationContext();
+		if (!(appContext instanceof Application) || appContext == sLifecycleCallbacksApplication) return;
+		final FlushCallbacks callbacks = new FlushCallbacks();
+		((Application) appContext).registerActivityLifecycleCallbacks(callbacks);
+		((Application) appContext).registerComponentCallbacks(callbacks);
+		sLifecycleCallbacksApplication = (Application) appContext;
+	}
+
+	/**
+	 * Remove the written values which haven't been replaced since.
+	 */
+	private static void removeWritten(PreferenceStorage storage, Map<String, Object> written) {
+		final Map<String, Object> values = sPending.get(storage);
+		if (values == null) return;
+		for (Iterator<Map.Entry<String, Object>> it = values.entrySet().iterator(); it.hasNext();) {
+			final Map.Entry<String, Object> entry = it.next();
+			if (written.get(entry.getKey()) == entry.getValue()) {
+				it.remove();
+			}
+		}
+		if (values.isEmpty()) {
+			sPending.remove(storage);
+		}
+	}
+
+	private static final class FlushCallbacks implements ActivityLifecycleCallbacks, ComponentCallbacks2 {
+
+		@Override
+		public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+
+		}
+
+		@Override
+		public void onActivityDestroyed(Activity activity) {
+
+		}
+
+		@Override
+		public void onActivityPaused(Activity activity) {
+			flushInBackground();
+		}
+
+		@Override
+		public void onActivityResumed(Activity activity) {
+
+		}
+
+		@Override
+		public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+
+		}
+
+		@Override
+		public void onActivityStarted(Activity activity) {
+
+		}
+
+		@Override
+		public void onActivityStopped(Activity activity) {
+			flushInBackground();
+		}
+
+		@Override
+		public void onConfigurationChanged(Configuration newConfig) {
+
+		}
+
+		@Override
+		public void onLowMemory() {
+			flush();
+		}
+
+		/**
+		 * The process may be killed from now on, so the values are written
+		 * before returning. They were usually written already by the
+		 * background flush of onStop, and nothing is left to wait for.
+		 */
+		@Override
+		public void onTrimMemory(int level) {
+			if (level < TRIM_MEMORY_BACKGROUND) return;
+			flush();
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package org.mariotaku.preference;
+
+/**
+ * Mapping between preference values and {@link android.widget.SeekBar}
+ * progress. Kept free of framework classes so it can be exercised on a plain
+ * JVM.
+ */
+final class ProgressMapping {
+
+	/**
+	 * Number of decimal digits of a text size picked on the seek bar.
+	 */
+	static final int TEXT_SIZE_SCALE = 1;
+
+	/**
+	 * Number of seek bar steps per text size unit, one per value of the last
+	 * decimal digit.
+	 */
+	static final int TEXT_SIZE_STEPS = pow10(TEXT_SIZE_SCALE);
+
+	private ProgressMapping() {
+		throw new AssertionError();
+	}
+
+	static int toProgress(int value, int min, int max) {
+		return Math.max(0, Math.min(max - min, value - min));
+	}
+
+	static int fromProgress(int progress, int min) {
+		return progress + min;
+	}
+
+	/**
+	 * @return number of steps between min and max.
+	 */
+	static int getMaxProgress(float min, float max, int steps) {
+		return Math.round((max - min) * steps);
+	}
+
+	/**
+	 * Map a float value to the nearest step. Truncating instead would put
+	 * values such as 0.3 above the minimum, which are slightly below 3 steps
+	 * in float, one step too low.
+	 */
+	static int toProgress(float value, float min, float max, int steps) {
+		return Math.max(0, Math.min(getMaxProgress(min, max, steps), Math.round((value - min) * steps)));
+	}
+
+	static float fromProgress(int progress, float min, int steps) {
+		return (float) progress / steps + min;
+	}
+
+	private static int pow10(int exponent) {
+		int result = 1;
+		for (int i = 0; i < exponent; i++) {
+			result *= 10;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,258 @@
+package org.mariotaku.preference;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.os.Process;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Small process-wide LRU cache of saturation/value plane textures, one per
+ * quantized hue. The plane is bilinear in saturation and value, so a texture
+ * drawn scaled with bitmap filtering looks the same as the gradients it
+ * replaces, and can be drawn with hardware acceleration.
+ *
+ * The UI thread only requests textures: missing ones are rendered by a
+ * background thread, which renders the latest requested hue and skips the
+ * ones requested meanwhile, so a hue drag neither renders nor allocates on
+ * the UI thread. Once a texture is rendered, the views waiting for it are
+ * invalidated, and the pixels are copied into the bitmap of the least
+ * recently used texture by the next request, on the UI thread.
+ */
+final class SatValTextureCache {
+
+	/**
+	 * Width and height of the textures in pixels.
+	 */
+	static final int TEXTURE_SIZE = 256;
+
+	/**
+	 * Hue range of a bucket. The hue of a texture is at most a degree away
+	 * from the hue it is drawn for.
+	 */
+	private static final int DEGREES_PER_BUCKET = 2;
+
+	private static final int BUCKET_COUNT = 360 / DEGREES_PER_BUCKET;
+
+	private static final int MAX_ENTRIES = 4;
+
+	private static final int MAX_WAITING_VIEWS = 4;
+
+	private static final int[] sBuckets = new int[MAX_ENTRIES];
+	private static final Bitmap[] sTextures = new Bitmap[MAX_ENTRIES];
+	private static final long[] sLastUse = new long[MAX_ENTRIES];
+	private static long sUseCounter;
+
+	private static int[] sPixels;
+
+	private static Thread sRenderThread;
+	private static int sRequestedBucket = -1;
+
+	/*
+	 * Pixels of sUploadBucket rendered by the render thread, which renders
+	 * nothing else until they are copied into a texture by the UI thread.
+	 */
+	private static int[] sUploadPixels;
+	private static int sUploadBucket = -1;
+
+	private static final ArrayList<View> sWaitingViews = new ArrayList<View>(MAX_WAITING_VIEWS);
+
+	private SatValTextureCache() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Get the saturation/value texture for the given hue, rendering it on
+	 * the calling thread if it's missing. Saturation grows from left to right
+	 * and value from bottom to top.
+	 *
+	 * @param hue hue in degrees.
+	 */
+	static Bitmap getTexture(float hue) {
+		final int bucket = getBucket(hue);
+		synchronized (SatValTextureCache.class) {
+			final Bitmap cached = get(bucket);
+			if (cached != null) return cached;
+		}
+		return render(bucket);
+	}
+
+	/**
+	 * Get the saturation/value texture for the given hue if it's cached, or
+	 * have it rendered in the background otherwise. Never blocks on a render
+	 * and, once the cache is full, doesn't allocate. Must be called from the
+	 * UI thread, where textures are only drawn, since a texture rendered in
+	 * the background is copied into an evicted bitmap here.
+	 *
+	 * @param hue hue in degrees.
+	 * @param view view invalidated once the texture is rendered, if it's
+	 *            missing.
+	 * @return the texture, or null if it isn't rendered yet.
+	 */
+	static Bitmap requestTexture(float hue, View view) {
+		final int bucket = getBucket(hue);
+		synchronized (SatValTextureCache.class) {
+			if (sUploadBucket >= 0) {
+				upload();
+			}
+			final Bitmap cached = get(bucket);
+			if (cached != null) return cached;
+			if (!sWaitingViews.contains(view)) {
+				sWaitingViews.add(view);
+			}
+			if (sRequestedBucket != bucket) {
+				sRequestedBucket = bucket;
+				if (sRenderThread == null) {
+					sRenderThread = new RenderThread();
+					sRenderThread.start();
+				} else {
+					SatValTextureCache.class.notifyAll();
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the cached texture of a bucket, or null. Must be called with the
+	 *         cache lock held.
+	 */
+	private static Bitmap get(int bucket) {
+		for (int i = 0; i < MAX_ENTRIES; i++) {
+			if (sTextures[i] != null && sBuckets[i] == bucket) {
+				sLastUse[i] = ++sUseCounter;
+				return sTextures[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Hue 360 is the same as 0, and shares its bucket.
+	 */
+	static int getBucket(float hue) {
+		return Math.round(Math.max(0f, Math.min(360f, hue)) / DEGREES_PER_BUCKET) % BUCKET_COUNT;
+	}
+
+	/**
+	 * @return the index of the empty or least recently used entry. Must be
+	 *         called with the cache lock held.
+	 */
+	private static int getLeastRecentlyUsed() {
+		int oldest = 0;
+		for (int i = 0; i < MAX_ENTRIES; i++) {
+			if (sTextures[i] == null || sTextures[oldest] != null && sLastUse[i] < sLastUse[oldest]) {
+				oldest = i;
+			}
+		}
+		return oldest;
+	}
+
+	/**
+	 * Render the texture of a bucket without holding the cache lock, so no
+	 * thread waits for another thread's render. Only used when a texture is
+	 * needed right away, so it creates a new bitmap; an evicted texture is
+	 * left untouched for the views still drawing it.
+	 */
+	private static Bitmap render(int bucket) {
+		final int[] pixels;
+		synchronized (SatValTextureCache.class) {
+			pixels = sPixels != null ? sPixels : new int[TEXTURE_SIZE * TEXTURE_SIZE];
+			sPixels = null;
+		}
+		final int size = TEXTURE_SIZE;
+		ColorPanelRasterizer.renderSatVal(bucket * DEGREES_PER_BUCKET, pixels, 0, size, size, size);
+		// Mutable, so the texture can be rendered into again once evicted.
+		final Bitmap texture = Bitmap.createBitmap(size, size, Config.ARGB_8888);
+		texture.setPixels(pixels, 0, size, 0, 0, size, size);
+		synchronized (SatValTextureCache.class) {
+			sPixels = pixels;
+			// Another thread may have rendered the same hue meanwhile.
+			final Bitmap cached = get(bucket);
+			if (cached != null) return cached;
+			put(getLeastRecentlyUsed(), bucket, texture);
+		}
+		return texture;
+	}
+
+	/**
+	 * Must be called with the cache lock held.
+	 */
+	private static void put(int index, int bucket, Bitmap texture) {
+		sTextures[index] = texture;
+		sBuckets[index] = bucket;
+		sLastUse[index] = ++sUseCounter;
+	}
+
+	/**
+	 * Copy the pixels rendered in the background into the least recently
+	 * used texture, reusing its bitmap, and let the render thread go on. Must
+	 * be called on the UI thread with the cache lock held.
+	 */
+	private static void upload() {
+		if (sUploadPixels != null && get(sUploadBucket) == null) {
+			final int size = TEXTURE_SIZE;
+			final int index = getLeastRecentlyUsed();
+			Bitmap texture = sTextures[index];
+			if (texture == null) {
+				texture = Bitmap.createBitmap(size, size, Config.ARGB_8888);
+			}
+			texture.setPixels(sUploadPixels, 0, size, 0, 0, size, size);
+			put(index, sUploadBucket, texture);
+		}
+		sUploadPixels = null;
+		sUploadBucket = -1;
+		SatValTextureCache.class.notifyAll();
+	}
+
+	/**
+	 * Renders the requested textures, started on the first request and kept
+	 * for the lifetime of the process.
+	 */
+	private static final class RenderThread extends Thread {
+
+		RenderThread() {
+			super("SatValTextureCache");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+			final int size = TEXTURE_SIZE;
+			final int[] pixels = new int[size * size];
+			while (true) {
+				final int bucket;
+				final boolean cached;
+				synchronized (SatValTextureCache.class) {
+					while (sRequestedBucket < 0 || sUploadBucket >= 0) {
+						try {
+							SatValTextureCache.class.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					bucket = sRequestedBucket;
+					sRequestedBucket = -1;
+					// Rendered by getTexture meanwhile, the waiting views
+					// only need to draw again.
+					cached = get(bucket) != null;
+				}
+				if (!cached) {
+					ColorPanelRasterizer.renderSatVal(bucket * DEGREES_PER_BUCKET, pixels, 0, size, size, size);
+				}
+				synchronized (SatValTextureCache.class) {
+					if (!cached) {
+						sUploadPixels = pixels;
+						sUploadBucket = bucket;
+					}
+					for (int i = 0, j = sWaitingViews.size(); i < j; i++) {
+						sWaitingViews.get(i).postInvalidate();
+					}
+					sWaitingViews.clear();
+				}
+			}
+		}
+	}
+}
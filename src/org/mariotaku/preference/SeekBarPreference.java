@@ -5,10 +5,12 @@ import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
-import android.content.res.Resources.NotFoundException;
+import android.content.SharedPreferences;
 import android.graphics.PixelFormat;
+import android.os.SystemClock;
 import android.preference.Preference;
 import android.preference.Preference.OnPreferenceClickListener;
+import android.preference.PreferenceManager;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup.LayoutParams;
@@ -27,11 +29,15 @@ public class SeekBarPreference extends Preference implements OnPreferenceClickLi
 	private static final String ATTR_TITLE = "title";
 	private static final String ATTR_DIALOGMESSAGE = "dialogMessage";
 	private int mDefaultValue = 0;
-	private int mValue = 0;
 	private int mMax = 100;
 	private int mMin = 0;
-	private String mTitle = null;
-	private String mMessage = null;
+	private LazyStringAttribute mTitle = null;
+	private LazyStringAttribute mMessage = null;
+	private ValueFormatter mValueFormatter = ValueFormatters.number();
+
+	private OnIntValueChangeListener[] mIntValueListeners = new OnIntValueChangeListener[0];
+
+	private final CachedPreferenceValue mValue = new CachedPreferenceValue(this);
 
 	public SeekBarPreference(Context context) {
 		super(context);
@@ -48,66 +54,151 @@ public class SeekBarPreference extends Preference implements OnPreferenceClickLi
 		init(context, attrs);
 	}
 
+	/**
+	 * Add a listener receiving the new value when the user changes it, in
+	 * addition to the {@link Preference.OnPreferenceChangeListener}.
+	 */
+	public void addOnIntValueChangeListener(OnIntValueChangeListener listener) {
+
+		mIntValueListeners = ListenerArrays.add(mIntValueListeners, listener);
+	}
+
+	/**
+	 * @return the storage of the value of this preference, which is its
+	 *         {@link SharedPreferences} unless set otherwise, or null if it
+	 *         isn't attached yet.
+	 */
+	public PreferenceStorage getStorage() {
+
+		return mValue.getStorage();
+	}
+
 	@Override
 	public boolean onPreferenceClick(Preference preference) {
 
-		SeekBarDialog dialog = new SeekBarDialog(getContext(), mMin, mMax, mValue);
-		if (mTitle != null) {
-			dialog.setTitle(mTitle);
-		}
-		if (mMessage != null) {
-			dialog.setMessage(mMessage);
+		final long clickTime = SystemClock.uptimeMillis();
+		SeekBarDialog dialog = DialogPool.get(getContext(), SeekBarDialog.class);
+		if (dialog == null) {
+			dialog = new SeekBarDialog(getContext());
+			DialogPool.put(getContext(), dialog);
 		}
-		dialog.show();
+		dialog.bind(this);
+		DialogPool.show(dialog, clickTime);
 
 		return false;
 	}
 
+	public void removeOnIntValueChangeListener(OnIntValueChangeListener listener) {
+
+		mIntValueListeners = ListenerArrays.remove(mIntValueListeners, listener);
+	}
+
+	/**
+	 * Set the storage of the value of this preference, instead of its
+	 * {@link SharedPreferences}.
+	 * 
+	 * @param storage the storage, or null to use the SharedPreferences.
+	 */
+	public void setStorage(PreferenceStorage storage) {
+
+		mValue.setStorage(storage);
+	}
+
+	/**
+	 * Set the formatter of the value shown while the dialog is dragged.
+	 * 
+	 * @param formatter the formatter, defaults to
+	 *            {@link ValueFormatters#number()}.
+	 */
+	public void setValueFormatter(ValueFormatter formatter) {
+
+		if (formatter == null) throw new NullPointerException();
+		mValueFormatter = formatter;
+	}
+
+	@Override
+	protected int getPersistedInt(int defaultReturnValue) {
+		if (!shouldPersist()) return defaultReturnValue;
+		return getStorage().getInt(getKey(), defaultReturnValue);
+	}
+
+	@Override
+	protected boolean persistInt(int value) {
+		if (!shouldPersist()) return false;
+		// Written by the shared write-behind layer, which skips unchanged
+		// values and keeps the others in the memory of the storage until
+		// the next flush writes them in one transaction per storage.
+		PreferenceWriteBatcher.putInt(getContext(), getStorage(), getKey(), value);
+		return true;
+	}
+
+	@Override
+	protected void onAttachedToHierarchy(PreferenceManager preferenceManager) {
+
+		super.onAttachedToHierarchy(preferenceManager);
+		mValue.observe();
+	}
+
+	@Override
+	protected void onPrepareForRemoval() {
+
+		super.onPrepareForRemoval();
+		mValue.stopObserving();
+	}
+
 	@Override
 	protected void onSetInitialValue(boolean restoreValue, Object defaultValue) {
 
-		if (isPersistent()) {
-			persistInt(restoreValue ? getValue() : (Integer) defaultValue);
+		// Only called without a value to restore when a default was set with
+		// setDefaultValue(). A restored value is already stored, and the
+		// framework only checks the SharedPreferences for one, so the default
+		// is only written if the storage has no value either.
+		if (!restoreValue && shouldPersist() && !getStorage().contains(getKey())) {
+			final int value = (Integer) defaultValue;
+			mValue.setInt(value);
+			persistInt(value);
 		}
+	}
 
+	/**
+	 * Change the value without notifying listeners or rebinding the view, for
+	 * {@link PreferenceProfiles} which does both once for all preferences.
+	 */
+	void applyValue(int value) {
+
+		mValue.setInt(value);
+		persistInt(value);
 	}
 
-	private int getValue() {
+	int getDefaultValue() {
+
+		return mDefaultValue;
+	}
 
+	int getValue() {
+
+		if (mValue.isCached()) return mValue.getInt();
 		try {
 			if (isPersistent()) {
-				mValue = getPersistedInt(mDefaultValue);
+				mValue.setInt(getPersistedInt(mDefaultValue));
 			}
 		} catch (ClassCastException e) {
-			mValue = mDefaultValue;
+			mValue.setInt(mDefaultValue);
 		}
 
-		return mValue;
+		return mValue.getInt();
 	}
 
 	private void init(Context context, AttributeSet attrs) {
 
 		setOnPreferenceClickListener(this);
 		if (attrs != null) {
-			try {
-				mTitle = context.getString(attrs.getAttributeResourceValue(ANDROID_NS, ATTR_DIALOGTITLE, -1));
-			} catch (NotFoundException e) {
-				mTitle = attrs.getAttributeValue(ANDROID_NS, ATTR_DIALOGTITLE);
-			}
-
+			// Strings are resolved when the dialog is first shown.
+			mTitle = LazyStringAttribute.read(attrs, ANDROID_NS, ATTR_DIALOGTITLE);
 			if (mTitle == null) {
-				try {
-					mTitle = context.getString(attrs.getAttributeResourceValue(ANDROID_NS, ATTR_TITLE, -1));
-				} catch (NotFoundException e) {
-					mTitle = attrs.getAttributeValue(ANDROID_NS, ATTR_TITLE);
-				}
-			}
-
-			try {
-				mMessage = context.getString(attrs.getAttributeResourceValue(ANDROID_NS, ATTR_DIALOGMESSAGE, -1));
-			} catch (NotFoundException e) {
-				mMessage = attrs.getAttributeValue(ANDROID_NS, ATTR_DIALOGMESSAGE);
+				mTitle = LazyStringAttribute.read(attrs, ANDROID_NS, ATTR_TITLE);
 			}
+			mMessage = LazyStringAttribute.read(attrs, ANDROID_NS, ATTR_DIALOGMESSAGE);
 
 			String defaultValue = attrs.getAttributeValue(ANDROID_NS, ATTR_DEFAULTVALUE);
 			if (defaultValue != null && defaultValue.startsWith("@")) {
@@ -122,31 +213,44 @@ public class SeekBarPreference extends Preference implements OnPreferenceClickLi
 			mMax = attrs.getAttributeIntValue(null, ATTR_MAXVALUE, 100);
 			mMin = attrs.getAttributeIntValue(null, ATTR_MINVALUE, 0);
 		}
-		mValue = mDefaultValue;
+		mValue.setInt(mDefaultValue);
 	}
 
-	private class SeekBarDialog extends AlertDialog implements OnClickListener, OnSeekBarChangeListener {
+	/**
+	 * Dialog pooled per activity by {@link DialogPool}, and bound to the
+	 * clicked preference each time it is shown.
+	 */
+	private static class SeekBarDialog extends AlertDialog implements OnClickListener, OnSeekBarChangeListener {
 
 		private SeekBar mSeekBar;
 		private TextView mMessageView, mProgressView;
 		private int mMin = 0;
+		private SeekBarPreference mPreference;
+		private ValueFormatter mFormatter;
+		private final char[] mProgressText = new char[ValueFormatter.MAX_LENGTH];
 
-		public SeekBarDialog(Context context, int min, int max, int defaultValue) {
+		public SeekBarDialog(Context context) {
 			super(context);
 
-			init(context, min, max, defaultValue);
+			init(context);
 		}
 
 		@Override
 		public void onClick(DialogInterface dialog, int which) {
+			final SeekBarPreference preference = mPreference;
 			switch (which) {
 				case Dialog.BUTTON_POSITIVE:
-					mValue = mSeekBar.getProgress() + mMin;
-					if (isPersistent()) {
-						persistInt(mValue);
+					final int value = ProgressMapping.fromProgress(mSeekBar.getProgress(), mMin);
+					preference.mValue.setInt(value);
+					if (preference.isPersistent()) {
+						preference.persistInt(value);
+						PreferenceWriteBatcher.flushInBackground();
 					}
-					if (getOnPreferenceChangeListener() != null) {
-						getOnPreferenceChangeListener().onPreferenceChange(SeekBarPreference.this, mValue);
+					if (preference.getOnPreferenceChangeListener() != null) {
+						preference.getOnPreferenceChangeListener().onPreferenceChange(preference, value);
+					}
+					for (OnIntValueChangeListener listener : preference.mIntValueListeners) {
+						listener.onIntValueChange(preference, value);
 					}
 					break;
 				case Dialog.BUTTON_NEGATIVE:
@@ -157,7 +261,7 @@ public class SeekBarPreference extends Preference implements OnPreferenceClickLi
 
 		@Override
 		public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-			mProgressView.setText(String.valueOf(progress + mMin));
+			showValue(ProgressMapping.fromProgress(progress, mMin));
 		}
 
 		@Override
@@ -176,14 +280,33 @@ public class SeekBarPreference extends Preference implements OnPreferenceClickLi
 			mMessageView.setVisibility(message != null ? View.VISIBLE : View.GONE);
 		}
 
-		private void init(Context context, int min, int max, int defaultValue) {
+		/**
+		 * Show the range, value, title and message of a preference.
+		 */
+		void bind(SeekBarPreference preference) {
+			final Context context = getContext();
+			mPreference = preference;
+			mFormatter = preference.mValueFormatter;
+			mMin = preference.mMin;
+			mSeekBar.setMax(preference.mMax - preference.mMin);
+			mSeekBar.setProgress(ProgressMapping.toProgress(preference.getValue(), preference.mMin, preference.mMax));
+			showValue(ProgressMapping.fromProgress(mSeekBar.getProgress(), mMin));
+			setTitle(preference.mTitle != null ? preference.mTitle.get(context) : preference.getTitle());
+			setMessage(preference.mMessage != null ? preference.mMessage.get(context) : null);
+		}
+
+		private void showValue(int value) {
+			final int length = mFormatter.format(value, 0, mProgressText);
+			mProgressView.setText(mProgressText, 0, length);
+		}
+
+		private void init(Context context) {
 
 			getWindow().setFormat(PixelFormat.RGBA_8888);
 			float density = context.getResources().getDisplayMetrics().density;
 
 			LinearLayout mContentView = new LinearLayout(context);
 			mContentView.setOrientation(LinearLayout.VERTICAL);
-			mMin = min;
 
 			mMessageView = new TextView(context);
 			mProgressView = new TextView(context);
@@ -200,9 +323,6 @@ public class SeekBarPreference extends Preference implements OnPreferenceClickLi
 			mMessageView.setTextColor(context.getResources().getColor(android.R.color.secondary_text_dark));
 			mProgressView.setTextSize(18.0f);
 			mProgressView.setTextColor(context.getResources().getColor(android.R.color.secondary_text_dark));
-			mSeekBar.setMax(max - min);
-			mSeekBar.setProgress(defaultValue - min);
-			mProgressView.setText(String.valueOf(mSeekBar.getProgress() + min));
 			mSeekBar.setOnSeekBarChangeListener(this);
 
 			setView(mContentView);
@@ -0,0 +1,179 @@
+package org.mariotaku.preference;
+
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link PreferenceStorage} writing into a {@link SharedPreferences} file.
+ * There is one instance per file, obtained with {@link #get(SharedPreferences)}.
+ *
+ * Applied values are kept in memory until they are written, so they are read
+ * back through this storage right away, while the {@link SharedPreferences}
+ * itself only sees them once their batch is committed.
+ */
+public final class SharedPreferencesStorage implements PreferenceStorage, OnSharedPreferenceChangeListener {
+
+	private static final Map<SharedPreferences, SharedPreferencesStorage> sInstances = new HashMap<SharedPreferences, SharedPreferencesStorage>();
+
+	private final SharedPreferences mPreferences;
+	private final ArrayList<OnChangeListener> mListeners = new ArrayList<OnChangeListener>();
+
+	/*
+	 * Guarded by this. Keys in mNotified were reported to the listeners when
+	 * they were applied, so the change callback of their commit is dropped.
+	 */
+	private final Map<String, Object> mApplied = new HashMap<String, Object>();
+	private final Set<String> mNotified = new HashSet<String>();
+
+	private SharedPreferencesStorage(SharedPreferences preferences) {
+		mPreferences = preferences;
+	}
+
+	@Override
+	public void apply(String key, Object value) {
+		if (!(value instanceof Integer) && !(value instanceof Float)) return;
+		synchronized (this) {
+			if (value.equals(mApplied.put(key, value))) return;
+		}
+		notifyChanged(key);
+	}
+
+	@Override
+	public boolean contains(String key) {
+		synchronized (this) {
+			if (mApplied.containsKey(key)) return true;
+		}
+		return mPreferences.contains(key);
+	}
+
+	@Override
+	public float getFloat(String key, float defValue) {
+		final Object applied;
+		synchronized (this) {
+			applied = mApplied.get(key);
+		}
+		if (applied != null) return (Float) applied;
+		return mPreferences.getFloat(key, defValue);
+	}
+
+	@Override
+	public int getInt(String key, int defValue) {
+		final Object applied;
+		synchronized (this) {
+			applied = mApplied.get(key);
+		}
+		if (applied != null) return (Integer) applied;
+		return mPreferences.getInt(key, defValue);
+	}
+
+	public SharedPreferences getSharedPreferences() {
+		return mPreferences;
+	}
+
+	@Override
+	public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+		synchronized (this) {
+			if (mNotified.remove(key)) return;
+		}
+		notifyChanged(key);
+	}
+
+	@Override
+	public void registerOnChangeListener(OnChangeListener listener) {
+		synchronized (mListeners) {
+			if (mListeners.isEmpty()) {
+				// SharedPreferences only keeps a weak reference to this
+				// storage, which is kept alive by sInstances.
+				mPreferences.registerOnSharedPreferenceChangeListener(this);
+			}
+			mListeners.add(listener);
+		}
+	}
+
+	@Override
+	public void unregisterOnChangeListener(OnChangeListener listener) {
+		synchronized (mListeners) {
+			if (mListeners.remove(listener) && mListeners.isEmpty()) {
+				mPreferences.unregisterOnSharedPreferenceChangeListener(this);
+				synchronized (this) {
+					mNotified.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Commit the values with a single editor, and stop holding the applied
+	 * values which haven't been replaced since.
+	 */
+	@Override
+	public boolean write(Map<String, Object> values) {
+		final boolean listening;
+		synchronized (mListeners) {
+			listening = !mListeners.isEmpty();
+		}
+		final Map<String, ?> stored = listening ? mPreferences.getAll() : null;
+		final ArrayList<String> notified = new ArrayList<String>();
+		final SharedPreferences.Editor editor = mPreferences.edit();
+		synchronized (this) {
+			for (Map.Entry<String, Object> value : values.entrySet()) {
+				final String key = value.getKey();
+				put(editor, key, value.getValue());
+				// Only keys whose value changes get a callback from the commit.
+				if (listening && value.getValue().equals(mApplied.get(key)) && !value.getValue().equals(stored.get(key))
+						&& mNotified.add(key)) {
+					notified.add(key);
+				}
+			}
+		}
+		if (!editor.commit()) {
+			synchronized (this) {
+				mNotified.removeAll(notified);
+			}
+			return false;
+		}
+		synchronized (this) {
+			for (Iterator<Map.Entry<String, Object>> it = mApplied.entrySet().iterator(); it.hasNext();) {
+				final Map.Entry<String, Object> entry = it.next();
+				if (entry.getValue().equals(values.get(entry.getKey()))) {
+					it.remove();
+				}
+			}
+		}
+		return true;
+	}
+
+	private void notifyChanged(String key) {
+		final OnChangeListener[] listeners;
+		synchronized (mListeners) {
+			listeners = mListeners.toArray(new OnChangeListener[mListeners.size()]);
+		}
+		for (OnChangeListener listener : listeners) {
+			listener.onStorageChanged(this, key);
+		}
+	}
+
+	private static void put(SharedPreferences.Editor editor, String key, Object value) {
+		if (value instanceof Integer) {
+			editor.putInt(key, (Integer) value);
+		} else if (value instanceof Float) {
+			editor.putFloat(key, (Float) value);
+		}
+	}
+
+	public static synchronized SharedPreferencesStorage get(SharedPreferences preferences) {
+		SharedPreferencesStorage storage = sInstances.get(preferences);
+		if (storage == null) {
+			storage = new SharedPreferencesStorage(preferences);
+			sInstances.put(preferences, storage);
+		}
+		return storage;
+	}
+}
@@ -5,12 +5,13 @@ import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
-import android.content.res.Resources.NotFoundException;
+import android.content.SharedPreferences;
 import android.graphics.PixelFormat;
+import android.os.SystemClock;
 import android.preference.Preference;
 import android.preference.Preference.OnPreferenceClickListener;
+import android.preference.PreferenceManager;
 import android.util.AttributeSet;
-import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup.LayoutParams;
 import android.widget.LinearLayout;
@@ -28,11 +29,15 @@ public class TextSizePreference extends Preference implements OnPreferenceClickL
 	private static final String ATTR_TITLE = "title";
 	private static final String ATTR_DIALOGMESSAGE = "dialogMessage";
 	private float mDefaultValue = 0;
-	private float mValue = 0;
 	private float mMax = 24.0f;
 	private float mMin = 10.0f;
-	private String mTitle = null;
-	private String mMessage = null;
+	private LazyStringAttribute mTitle = null;
+	private LazyStringAttribute mMessage = null;
+	private ValueFormatter mValueFormatter = ValueFormatters.number();
+
+	private OnFloatValueChangeListener[] mFloatValueListeners = new OnFloatValueChangeListener[0];
+
+	private final CachedPreferenceValue mValue = new CachedPreferenceValue(this);
 
 	public TextSizePreference(Context context) {
 		super(context);
@@ -49,96 +54,195 @@ public class TextSizePreference extends Preference implements OnPreferenceClickL
 		init(context, attrs);
 	}
 
+	/**
+	 * Add a listener receiving the new value when the user changes it, in
+	 * addition to the {@link Preference.OnPreferenceChangeListener}.
+	 */
+	public void addOnFloatValueChangeListener(OnFloatValueChangeListener listener) {
+
+		mFloatValueListeners = ListenerArrays.add(mFloatValueListeners, listener);
+	}
+
+	/**
+	 * @return the storage of the value of this preference, which is its
+	 *         {@link SharedPreferences} unless set otherwise, or null if it
+	 *         isn't attached yet.
+	 */
+	public PreferenceStorage getStorage() {
+
+		return mValue.getStorage();
+	}
+
 	@Override
 	public boolean onPreferenceClick(Preference preference) {
 
-		TextSizeDialog dialog = new TextSizeDialog(getContext(), mMin, mMax, mValue);
-		if (mTitle != null) {
-			dialog.setTitle(mTitle);
-		}
-		if (mMessage != null) {
-			dialog.setMessage(mMessage);
+		final long clickTime = SystemClock.uptimeMillis();
+		TextSizeDialog dialog = DialogPool.get(getContext(), TextSizeDialog.class);
+		if (dialog == null) {
+			dialog = new TextSizeDialog(getContext());
+			DialogPool.put(getContext(), dialog);
 		}
-		dialog.show();
+		dialog.bind(this);
+		DialogPool.show(dialog, clickTime);
 
 		return false;
 	}
 
+	public void removeOnFloatValueChangeListener(OnFloatValueChangeListener listener) {
+
+		mFloatValueListeners = ListenerArrays.remove(mFloatValueListeners, listener);
+	}
+
+	/**
+	 * Set the storage of the value of this preference, instead of its
+	 * {@link SharedPreferences}.
+	 * 
+	 * @param storage the storage, or null to use the SharedPreferences.
+	 */
+	public void setStorage(PreferenceStorage storage) {
+
+		mValue.setStorage(storage);
+	}
+
+	/**
+	 * Set the formatter of the value shown while the dialog is dragged.
+	 * 
+	 * @param formatter the formatter, defaults to
+	 *            {@link ValueFormatters#number()}.
+	 */
+	public void setValueFormatter(ValueFormatter formatter) {
+
+		if (formatter == null) throw new NullPointerException();
+		mValueFormatter = formatter;
+	}
+
+	@Override
+	protected float getPersistedFloat(float defaultReturnValue) {
+		if (!shouldPersist()) return defaultReturnValue;
+		return getStorage().getFloat(getKey(), defaultReturnValue);
+	}
+
+	@Override
+	protected boolean persistFloat(float value) {
+		if (!shouldPersist()) return false;
+		// Written by the shared write-behind layer, which skips unchanged
+		// values and keeps the others in the memory of the storage until
+		// the next flush writes them in one transaction per storage.
+		PreferenceWriteBatcher.putFloat(getContext(), getStorage(), getKey(), value);
+		return true;
+	}
+
+	@Override
+	protected void onAttachedToHierarchy(PreferenceManager preferenceManager) {
+
+		super.onAttachedToHierarchy(preferenceManager);
+		mValue.observe();
+	}
+
+	@Override
+	protected void onPrepareForRemoval() {
+
+		super.onPrepareForRemoval();
+		mValue.stopObserving();
+	}
+
 	@Override
 	protected void onSetInitialValue(boolean restoreValue, Object defaultValue) {
 
-		if (isPersistent()) {
-			persistFloat(restoreValue ? getValue() : (Float) defaultValue);
+		// Only called without a value to restore when a default was set with
+		// setDefaultValue(). A restored value is already stored, and the
+		// framework only checks the SharedPreferences for one, so the default
+		// is only written if the storage has no value either.
+		if (!restoreValue && shouldPersist() && !getStorage().contains(getKey())) {
+			final float value = (Float) defaultValue;
+			mValue.setFloat(value);
+			persistFloat(value);
 		}
+	}
+
+	/**
+	 * Change the value without notifying listeners or rebinding the view, for
+	 * {@link PreferenceProfiles} which does both once for all preferences.
+	 */
+	void applyValue(float value) {
 
+		mValue.setFloat(value);
+		persistFloat(value);
 	}
 
-	private float getValue() {
+	float getDefaultValue() {
 
+		return mDefaultValue;
+	}
+
+	float getValue() {
+
+		if (mValue.isCached()) return mValue.getFloat();
 		try {
 			if (isPersistent()) {
-				mValue = getPersistedFloat(mDefaultValue);
+				mValue.setFloat(getPersistedFloat(mDefaultValue));
 			}
 		} catch (ClassCastException e) {
-			mValue = mDefaultValue;
+			mValue.setFloat(mDefaultValue);
 		}
 
-		return mValue;
+		return mValue.getFloat();
 	}
 
 	private void init(Context context, AttributeSet attrs) {
 
 		setOnPreferenceClickListener(this);
 		if (attrs != null) {
-			try {
-				mTitle = context.getString(attrs.getAttributeResourceValue(ANDROID_NS, ATTR_DIALOGTITLE, -1));
-			} catch (NotFoundException e) {
-				mTitle = attrs.getAttributeValue(ANDROID_NS, ATTR_DIALOGTITLE);
-			}
-
+			// Strings are resolved when the dialog is first shown.
+			mTitle = LazyStringAttribute.read(attrs, ANDROID_NS, ATTR_DIALOGTITLE);
 			if (mTitle == null) {
-				try {
-					mTitle = context.getString(attrs.getAttributeResourceValue(ANDROID_NS, ATTR_TITLE, -1));
-				} catch (NotFoundException e) {
-					mTitle = attrs.getAttributeValue(ANDROID_NS, ATTR_TITLE);
-				}
-			}
-
-			try {
-				mMessage = context.getString(attrs.getAttributeResourceValue(ANDROID_NS, ATTR_DIALOGMESSAGE, -1));
-			} catch (NotFoundException e) {
-				mMessage = attrs.getAttributeValue(ANDROID_NS, ATTR_DIALOGMESSAGE);
+				mTitle = LazyStringAttribute.read(attrs, ANDROID_NS, ATTR_TITLE);
 			}
+			mMessage = LazyStringAttribute.read(attrs, ANDROID_NS, ATTR_DIALOGMESSAGE);
 
 			mDefaultValue = attrs.getAttributeFloatValue(ANDROID_NS, ATTR_DEFAULTVALUE, 0);
 			mMax = attrs.getAttributeFloatValue(null, ATTR_MAXVALUE, 100);
 			mMin = attrs.getAttributeFloatValue(null, ATTR_MINVALUE, 0);
 		}
-		mValue = mDefaultValue;
+		mValue.setFloat(mDefaultValue);
 	}
 
-	private class TextSizeDialog extends AlertDialog implements OnClickListener, OnSeekBarChangeListener {
+	/**
+	 * Dialog pooled per activity by {@link DialogPool}, and bound to the
+	 * clicked preference each time it is shown.
+	 */
+	private static class TextSizeDialog extends AlertDialog implements OnClickListener, OnSeekBarChangeListener {
 
 		private SeekBar mSeekBar;
-		private TextView mMessageView, mTextSizeView;
+		private TextView mMessageView, mValueView;
+		private TextSizePreviewView mTextSizeView;
 		private float mMin = 0;
+		private TextSizePreference mPreference;
+		private ValueFormatter mFormatter;
+		private final char[] mValueText = new char[ValueFormatter.MAX_LENGTH];
 
-		public TextSizeDialog(Context context, float min, float max, float defaultValue) {
+		public TextSizeDialog(Context context) {
 			super(context);
 
-			init(context, min, max, defaultValue);
+			init(context);
 		}
 
 		@Override
 		public void onClick(DialogInterface dialog, int which) {
+			final TextSizePreference preference = mPreference;
 			switch (which) {
 				case Dialog.BUTTON_POSITIVE:
-					mValue = (float) mSeekBar.getProgress() / 10 + mMin;
-					if (isPersistent()) {
-						persistFloat(mValue);
+					final float value = ProgressMapping.fromProgress(mSeekBar.getProgress(), mMin, ProgressMapping.TEXT_SIZE_STEPS);
+					preference.mValue.setFloat(value);
+					if (preference.isPersistent()) {
+						preference.persistFloat(value);
+						PreferenceWriteBatcher.flushInBackground();
 					}
-					if (getOnPreferenceChangeListener() != null) {
-						getOnPreferenceChangeListener().onPreferenceChange(TextSizePreference.this, mValue);
+					if (preference.getOnPreferenceChangeListener() != null) {
+						preference.getOnPreferenceChangeListener().onPreferenceChange(preference, value);
+					}
+					for (OnFloatValueChangeListener listener : preference.mFloatValueListeners) {
+						listener.onFloatValueChange(preference, value);
 					}
 					break;
 				case Dialog.BUTTON_NEGATIVE:
@@ -149,7 +253,7 @@ public class TextSizePreference extends Preference implements OnPreferenceClickL
 
 		@Override
 		public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-			mTextSizeView.setTextSize((float) progress / 10 + mMin);
+			showValue(ProgressMapping.fromProgress(progress, mMin, ProgressMapping.TEXT_SIZE_STEPS));
 		}
 
 		@Override
@@ -168,37 +272,58 @@ public class TextSizePreference extends Preference implements OnPreferenceClickL
 			mMessageView.setVisibility(message != null ? View.VISIBLE : View.GONE);
 		}
 
-		private void init(Context context, float min, float max, float defaultValue) {
+		/**
+		 * Show the range, value, title and message of a preference.
+		 */
+		void bind(TextSizePreference preference) {
+			final Context context = getContext();
+			mPreference = preference;
+			mFormatter = preference.mValueFormatter;
+			mMin = preference.mMin;
+			mSeekBar.setMax(ProgressMapping.getMaxProgress(preference.mMin, preference.mMax, ProgressMapping.TEXT_SIZE_STEPS));
+			mSeekBar.setProgress(ProgressMapping.toProgress(preference.getValue(), preference.mMin, preference.mMax,
+					ProgressMapping.TEXT_SIZE_STEPS));
+			showValue(ProgressMapping.fromProgress(mSeekBar.getProgress(), mMin, ProgressMapping.TEXT_SIZE_STEPS));
+			setTitle(preference.mTitle != null ? preference.mTitle.get(context) : preference.getTitle());
+			setMessage(preference.mMessage != null ? preference.mMessage.get(context) : null);
+		}
+
+		private void showValue(float value) {
+			final int length = mFormatter.format(Math.round(value * ProgressMapping.TEXT_SIZE_STEPS),
+					ProgressMapping.TEXT_SIZE_SCALE, mValueText);
+			mValueView.setText(mValueText, 0, length);
+			mTextSizeView.setTextSize(value);
+		}
+
+		private void init(Context context) {
 
 			getWindow().setFormat(PixelFormat.RGBA_8888);
 			float density = context.getResources().getDisplayMetrics().density;
 
 			LinearLayout mContentView = new LinearLayout(context);
 			mContentView.setOrientation(LinearLayout.VERTICAL);
-			mMin = min;
 
 			mMessageView = new TextView(context);
-			mTextSizeView = new TextView(context);
+			mValueView = new TextView(context);
+			mTextSizeView = new TextSizePreviewView(context);
 			mSeekBar = new SeekBar(context);
 
 			mContentView.addView(mMessageView, LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT);
+			mContentView.addView(mValueView, LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT);
 			mContentView.addView(mTextSizeView, LayoutParams.MATCH_PARENT, (int)(60 * density));
 			mContentView.addView(mSeekBar, LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT);
 			int padding = Math.round(density * 16);
 			mContentView.setPadding(padding, padding, padding, padding);
-			mSeekBar.setMax((int) (10 * (max - min)));
-			mSeekBar.setProgress((int) (10 * (defaultValue - min)));
 			mSeekBar.setOnSeekBarChangeListener(this);
 			
 			mMessageView.setVisibility(View.GONE);
 			mMessageView.setTextSize(18.0f);
 			mMessageView.setTextColor(context.getResources().getColor(android.R.color.secondary_text_dark));
+			mValueView.setTextSize(18.0f);
+			mValueView.setTextColor(context.getResources().getColor(android.R.color.secondary_text_dark));
 			
-			mTextSizeView.setSingleLine();
-			mTextSizeView.setGravity(Gravity.CENTER);
 			mTextSizeView.setTextColor(context.getResources().getColor(android.R.color.secondary_text_dark));
 			mTextSizeView.setText("AaBbCc");
-			mTextSizeView.setTextSize((float) mSeekBar.getProgress() / 10 + min);
 
 			setView(mContentView);
 
@@ -0,0 +1,117 @@
+package org.mariotaku.preference;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+import android.graphics.Paint.FontMetrics;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * Preview of a text size. Unlike a {@link android.widget.TextView}, its size
+ * doesn't depend on the text, so changing the text size only redraws the view
+ * and never requests a layout pass of the window.
+ */
+public class TextSizePreviewView extends View {
+
+	private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final FontMetrics mFontMetrics = new FontMetrics();
+
+	private CharSequence mText = "";
+	private float mTextSize;
+
+	private int mMeasureCount, mLayoutCount, mFrameCount;
+	private long mDrawTimeNanos;
+
+	public TextSizePreviewView(Context context) {
+		this(context, null);
+	}
+
+	public TextSizePreviewView(Context context, AttributeSet attrs) {
+		this(context, attrs, 0);
+	}
+
+	public TextSizePreviewView(Context context, AttributeSet attrs, int defStyle) {
+		super(context, attrs, defStyle);
+		mPaint.setTextAlign(Align.CENTER);
+		setTextSize(14);
+	}
+
+	/**
+	 * @return total time spent in onDraw, in nanoseconds.
+	 */
+	public long getDrawTimeNanos() {
+		return mDrawTimeNanos;
+	}
+
+	public int getFrameCount() {
+		return mFrameCount;
+	}
+
+	public int getLayoutCount() {
+		return mLayoutCount;
+	}
+
+	public int getMeasureCount() {
+		return mMeasureCount;
+	}
+
+	public float getTextSize() {
+		return mTextSize;
+	}
+
+	public void resetCounters() {
+		mMeasureCount = 0;
+		mLayoutCount = 0;
+		mFrameCount = 0;
+		mDrawTimeNanos = 0;
+	}
+
+	public void setText(CharSequence text) {
+		mText = text != null ? text : "";
+		invalidate();
+	}
+
+	public void setTextColor(int color) {
+		mPaint.setColor(color);
+		invalidate();
+	}
+
+	/**
+	 * Set the text size, in scaled pixels.
+	 */
+	public void setTextSize(float size) {
+		if (size == mTextSize) return;
+		mTextSize = size;
+		final float px = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, size, getResources()
+				.getDisplayMetrics());
+		mPaint.setTextSize(px);
+		mPaint.getFontMetrics(mFontMetrics);
+		invalidate();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		final long start = System.nanoTime();
+		final float x = getPaddingLeft() + (getWidth() - getPaddingLeft() - getPaddingRight()) / 2f;
+		final float centerY = getPaddingTop() + (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f;
+		final float y = centerY - (mFontMetrics.ascent + mFontMetrics.descent) / 2;
+		canvas.drawText(mText, 0, mText.length(), x, y, mPaint);
+		mDrawTimeNanos += System.nanoTime() - start;
+		mFrameCount++;
+	}
+
+	@Override
+	protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+		super.onLayout(changed, left, top, right, bottom);
+		mLayoutCount++;
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+		mMeasureCount++;
+	}
+}
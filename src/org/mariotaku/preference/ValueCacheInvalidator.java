@@ -0,0 +1,94 @@
+package org.mariotaku.preference;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Invalidates the values cached by the preferences of this library when they
+ * change in their {@link PreferenceStorage}. One listener is registered per
+ * storage while any of its keys is observed, and changes are dispatched by
+ * key to weakly referenced callbacks.
+ * Must only be used from the UI thread.
+ */
+final class ValueCacheInvalidator {
+
+	private static final Map<PreferenceStorage, KeyDispatcher> sDispatchers = new HashMap<PreferenceStorage, KeyDispatcher>();
+
+	private ValueCacheInvalidator() {
+		throw new AssertionError();
+	}
+
+	static void register(PreferenceStorage storage, String key, Callback callback) {
+		KeyDispatcher dispatcher = sDispatchers.get(storage);
+		if (dispatcher == null) {
+			dispatcher = new KeyDispatcher();
+			storage.registerOnChangeListener(dispatcher);
+			sDispatchers.put(storage, dispatcher);
+		}
+		ArrayList<WeakReference<Callback>> callbacks = dispatcher.callbacks.get(key);
+		if (callbacks == null) {
+			callbacks = new ArrayList<WeakReference<Callback>>(1);
+			dispatcher.callbacks.put(key, callbacks);
+		}
+		callbacks.add(new WeakReference<Callback>(callback));
+	}
+
+	static void unregister(PreferenceStorage storage, String key, Callback callback) {
+		final KeyDispatcher dispatcher = sDispatchers.get(storage);
+		if (dispatcher == null) return;
+		final ArrayList<WeakReference<Callback>> callbacks = dispatcher.callbacks.get(key);
+		if (callbacks == null) return;
+		for (int i = callbacks.size() - 1; i >= 0; i--) {
+			final Callback c = callbacks.get(i).get();
+			if (c == null || c == callback) {
+				callbacks.remove(i);
+			}
+		}
+		if (callbacks.isEmpty()) {
+			dispatcher.callbacks.remove(key);
+			removeIfEmpty(storage, dispatcher);
+		}
+	}
+
+	/**
+	 * Stop listening to a storage once no key of it is observed anymore.
+	 */
+	private static void removeIfEmpty(PreferenceStorage storage, KeyDispatcher dispatcher) {
+		if (!dispatcher.callbacks.isEmpty() || sDispatchers.get(storage) != dispatcher) return;
+		sDispatchers.remove(storage);
+		storage.unregisterOnChangeListener(dispatcher);
+	}
+
+	interface Callback {
+
+		/**
+		 * Called when the stored value of the registered key has changed.
+		 */
+		void onValueInvalidated();
+	}
+
+	private static final class KeyDispatcher implements PreferenceStorage.OnChangeListener {
+
+		final Map<String, ArrayList<WeakReference<Callback>>> callbacks = new HashMap<String, ArrayList<WeakReference<Callback>>>();
+
+		@Override
+		public void onStorageChanged(PreferenceStorage storage, String key) {
+			final ArrayList<WeakReference<Callback>> list = callbacks.get(key);
+			if (list == null) return;
+			for (int i = list.size() - 1; i >= 0; i--) {
+				final Callback callback = list.get(i).get();
+				if (callback != null) {
+					callback.onValueInvalidated();
+				} else {
+					list.remove(i);
+				}
+			}
+			if (list.isEmpty()) {
+				callbacks.remove(key);
+				removeIfEmpty(storage, this);
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package org.mariotaku.preference;
+
+/**
+ * Formats the value shown while a seek bar preference is dragged. Values are
+ * written into a buffer reused by the dialog and shown with
+ * {@link android.widget.TextView#setText(char[], int, int)}, so formatting
+ * doesn't need to allocate a String for every progress change.
+ *
+ * @see ValueFormatters
+ */
+public interface ValueFormatter {
+
+	/**
+	 * Length of the buffers passed to {@link #format(long, int, char[])}.
+	 */
+	int MAX_LENGTH = 32;
+
+	/**
+	 * Format a decimal value.
+	 *
+	 * @param value unscaled value, the formatted value is
+	 *            {@code value / 10^scale}.
+	 * @param scale number of decimal digits of the value.
+	 * @param buffer buffer of {@link #MAX_LENGTH} chars to write into,
+	 *            starting at index 0.
+	 * @return number of chars written.
+	 */
+	int format(long value, int scale, char[] buffer);
+}
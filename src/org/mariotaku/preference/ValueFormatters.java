@@ -0,0 +1,122 @@
+package org.mariotaku.preference;
+
+/**
+ * Built-in {@link ValueFormatter}s. None of them allocate while formatting.
+ */
+public final class ValueFormatters {
+
+	/**
+	 * Maximum length of a formatted number: sign, 19 digits and decimal
+	 * point.
+	 */
+	private static final int MAX_NUMBER_LENGTH = 21;
+
+	/**
+	 * Longest suffix a unit formatter accepts.
+	 */
+	public static final int MAX_UNIT_LENGTH = ValueFormatter.MAX_LENGTH - MAX_NUMBER_LENGTH;
+
+	private static final ValueFormatter NUMBER = new UnitFormatter("");
+
+	private ValueFormatters() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * @return formatter writing the value as a plain number, such as
+	 *         {@code 12} or {@code 12.5}.
+	 */
+	public static ValueFormatter number() {
+		return NUMBER;
+	}
+
+	/**
+	 * @param min value shown as 0%.
+	 * @param max value shown as 100%.
+	 * @return formatter writing the position of the value between min and max
+	 *         as a rounded percentage, such as {@code 40%}.
+	 */
+	public static ValueFormatter percent(float min, float max) {
+		if (max <= min) throw new IllegalArgumentException("max <= min");
+		return new PercentFormatter(min, max);
+	}
+
+	/**
+	 * @param unit text written after the number, at most
+	 *            {@link #MAX_UNIT_LENGTH} chars.
+	 * @return formatter writing the value followed by a unit, such as
+	 *         {@code 12sp}.
+	 */
+	public static ValueFormatter unit(String unit) {
+		if (unit == null) throw new NullPointerException();
+		if (unit.length() > MAX_UNIT_LENGTH) throw new IllegalArgumentException("unit is too long");
+		return new UnitFormatter(unit);
+	}
+
+	/**
+	 * Write a decimal number into a buffer.
+	 *
+	 * @return index following the last char written.
+	 */
+	static int writeNumber(long value, int scale, char[] buffer, int offset) {
+		scale = Math.max(0, Math.min(18, scale));
+		// Digits are extracted from the negative value, which also handles
+		// Long.MIN_VALUE.
+		long remaining = value < 0 ? value : -value;
+		int digits = 0;
+		int end = offset + MAX_NUMBER_LENGTH;
+		int pos = end;
+		do {
+			if (digits == scale && scale > 0) {
+				buffer[--pos] = '.';
+			}
+			buffer[--pos] = (char) ('0' - remaining % 10);
+			remaining /= 10;
+			digits++;
+		} while (remaining != 0 || digits <= scale);
+		if (value < 0) {
+			buffer[--pos] = '-';
+		}
+		final int length = end - pos;
+		System.arraycopy(buffer, pos, buffer, offset, length);
+		return offset + length;
+	}
+
+	private static final class PercentFormatter implements ValueFormatter {
+
+		private final float mMin, mRange;
+
+		PercentFormatter(float min, float max) {
+			mMin = min;
+			mRange = max - min;
+		}
+
+		@Override
+		public int format(long value, int scale, char[] buffer) {
+			float scaled = value;
+			for (int i = 0; i < scale; i++) {
+				scaled /= 10;
+			}
+			final long percent = Math.round((scaled - mMin) * 100 / mRange);
+			final int end = writeNumber(percent, 0, buffer, 0);
+			buffer[end] = '%';
+			return end + 1;
+		}
+	}
+
+	private static final class UnitFormatter implements ValueFormatter {
+
+		private final String mUnit;
+
+		UnitFormatter(String unit) {
+			mUnit = unit;
+		}
+
+		@Override
+		public int format(long value, int scale, char[] buffer) {
+			final int end = writeNumber(value, scale, buffer, 0);
+			mUnit.getChars(0, mUnit.length(), buffer, end);
+			return end + mUnit.length();
+		}
+	}
+}
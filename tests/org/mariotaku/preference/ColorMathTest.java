@@ -0,0 +1,103 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link ColorMath} bit for bit against the framework conversions.
+ * {@code Color.colorToHSV} and {@code Color.HSVToColor} are native, and
+ * Robolectric replaces them with {@code java.awt.Color}, so the expected
+ * results come from Skia's {@code SkRGBToHSV} and {@code SkHSVToColor}
+ * instead, which the native methods call. See tools/skcolor_golden.c for how
+ * the table was generated.
+ */
+public class ColorMathTest {
+
+	@Test
+	public void matchesFrameworkBitForBit() throws IOException {
+		final InputStream stream = getClass().getResourceAsStream("golden/skcolor.bin.gz");
+		assertNotNull(stream);
+		final DataInputStream in = new DataInputStream(new GZIPInputStream(stream));
+		try {
+			final Random random = new Random();
+			for (int r = 0; r <= 255; r += 15) {
+				for (int g = 0; g <= 255; g += 15) {
+					for (int b = 0; b <= 255; b += 15) {
+						assertArgbToHsv(in, 0xff000000 | r << 16 | g << 8 | b);
+					}
+				}
+			}
+			for (int i = 0; i < 4096; i++) {
+				assertArgbToHsv(in, 0xff000000 | (int) (random.nextFloat() * 16777216f));
+			}
+			for (int h = -1; h <= 72; h++) {
+				for (int s = 0; s <= 20; s++) {
+					for (int v = 0; v <= 20; v++) {
+						assertHsvToArgb(in, h * 5f, s / 20f, v / 20f);
+					}
+				}
+			}
+			for (int i = 0; i < 16384; i++) {
+				final float h = -10f + 380f * random.nextFloat();
+				final float s = -0.1f + 1.2f * random.nextFloat();
+				final float v = -0.1f + 1.2f * random.nextFloat();
+				assertHsvToArgb(in, h, s, v);
+			}
+			assertEquals("Unchecked reference values", -1, in.read());
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void roundTripsEveryPrimaryAndGray() {
+		final float[] hsv = new float[3];
+		for (int c = 0; c <= 0xff; c++) {
+			for (int color : new int[] { 0xff000000 | c << 16, 0xff000000 | c << 8, 0xff000000 | c,
+					0xff000000 | c * 0x010101 }) {
+				ColorMath.argbToHsv(color, hsv);
+				assertEquals(color, ColorMath.hsvToArgb(hsv[0], hsv[1], hsv[2], 0xff));
+			}
+		}
+	}
+
+	private static void assertArgbToHsv(DataInputStream in, int argb) throws IOException {
+		final float[] hsv = new float[3];
+		ColorMath.argbToHsv(argb, hsv);
+		for (int i = 0; i < 3; i++) {
+			final float expected = in.readFloat();
+			if (Float.floatToIntBits(expected) != Float.floatToIntBits(hsv[i])) {
+				fail(String.format("argbToHsv(#%08x)[%d]: expected %s, got %s", argb, i, expected, hsv[i]));
+			}
+		}
+	}
+
+	private static void assertHsvToArgb(DataInputStream in, float h, float s, float v) throws IOException {
+		final int expected = in.readInt();
+		final int actual = ColorMath.hsvToArgb(h, s, v, 0x80);
+		if (expected != actual) {
+			fail(String.format("hsvToArgb(%s, %s, %s): expected #%08x, got #%08x", h, s, v, expected, actual));
+		}
+	}
+
+	/**
+	 * Same generator as tools/skcolor_golden.c.
+	 */
+	private static final class Random {
+
+		private int mSeed = 0x2545f491;
+
+		float nextFloat() {
+			mSeed = mSeed * 1664525 + 1013904223;
+			return (float) (mSeed >>> 8) / 16777216f;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ColorPanelMappingTest {
+
+	@Test
+	public void pointToAlphaIsOpaqueOnTheLeft() {
+		assertEquals(0xff, ColorPanelMapping.pointToAlpha(10, 10, 265));
+		assertEquals(0, ColorPanelMapping.pointToAlpha(265, 10, 265));
+		assertEquals(0x80, ColorPanelMapping.pointToAlpha(137, 10, 265));
+	}
+
+	@Test
+	public void pointToAlphaClampsOutsidePoints() {
+		assertEquals(0xff, ColorPanelMapping.pointToAlpha(-50, 10, 265));
+		assertEquals(0, ColorPanelMapping.pointToAlpha(1000, 10, 265));
+	}
+
+	@Test
+	public void pointToHueIs360AtTheTop() {
+		assertEquals(360f, ColorPanelMapping.pointToHue(20, 20, 380), 0);
+		assertEquals(180f, ColorPanelMapping.pointToHue(200, 20, 380), 0);
+		assertEquals(0f, ColorPanelMapping.pointToHue(380, 20, 380), 0);
+		assertEquals(360f, ColorPanelMapping.pointToHue(-5, 20, 380), 0);
+		assertEquals(0f, ColorPanelMapping.pointToHue(400, 20, 380), 0);
+	}
+
+	@Test
+	public void pointToSatValMapsCornersAndClamps() {
+		final float[] result = new float[2];
+		ColorPanelMapping.pointToSatVal(10, 10, 10, 10, 110, 210, result);
+		assertEquals(0f, result[0], 0);
+		assertEquals(1f, result[1], 0);
+		ColorPanelMapping.pointToSatVal(60, 110, 10, 10, 110, 210, result);
+		assertEquals(0.5f, result[0], 1e-6f);
+		assertEquals(0.5f, result[1], 1e-6f);
+		ColorPanelMapping.pointToSatVal(500, 500, 10, 10, 110, 210, result);
+		assertEquals(1f, result[0], 0);
+		assertEquals(0f, result[1], 0);
+	}
+}
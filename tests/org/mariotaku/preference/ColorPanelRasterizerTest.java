@@ -0,0 +1,118 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Compares the rendered panels with golden images. Run the tests with
+ * {@code -Pgolden.record=<tests directory>} to write the golden images again
+ * after an intended rendering change.
+ */
+public class ColorPanelRasterizerTest {
+
+	private static final int SIZE = 64;
+
+	@Test
+	public void alphaStripMatchesGoldenImage() throws IOException {
+		final int[] pixels = new int[SIZE];
+		ColorPanelRasterizer.renderAlphaStrip(0xff3399cc, pixels, 0, SIZE);
+		assertEquals(0xff3399cc, pixels[0]);
+		assertEquals(0x003399cc, pixels[SIZE - 1]);
+		assertGolden("alpha_strip_3399cc.png", pixels, SIZE, 1);
+	}
+
+	@Test
+	public void checkerboardMatchesGoldenImage() throws IOException {
+		final int[] pixels = new int[SIZE * SIZE];
+		ColorPanelRasterizer.renderCheckerboard(5, pixels, 0, SIZE, SIZE, SIZE);
+		assertEquals(ColorPanelRasterizer.CHECKERBOARD_LIGHT, pixels[0]);
+		assertEquals(ColorPanelRasterizer.CHECKERBOARD_DARK, pixels[5]);
+		assertEquals(ColorPanelRasterizer.CHECKERBOARD_DARK, pixels[5 * SIZE]);
+		assertEquals(ColorPanelRasterizer.CHECKERBOARD_LIGHT, pixels[5 * SIZE + 5]);
+		assertGolden("checkerboard_5.png", pixels, SIZE, SIZE);
+	}
+
+	@Test
+	public void hueStripMatchesGoldenImage() throws IOException {
+		final int[] pixels = new int[SIZE];
+		ColorPanelRasterizer.renderHueStrip(pixels, 0, SIZE);
+		assertEquals(0xffff0000, pixels[0]);
+		assertEquals(0xffff0000, pixels[SIZE - 1]);
+		assertGolden("hue_strip.png", pixels, 1, SIZE);
+	}
+
+	@Test
+	public void hueStripOfTableSizeIsTheHueTable() {
+		final int[] pixels = new int[ColorPanelRasterizer.HUE_TABLE_SIZE];
+		ColorPanelRasterizer.renderHueStrip(pixels, 0, pixels.length);
+		for (int i = 0; i < pixels.length; i++) {
+			assertEquals(ColorMath.hsvToArgb(360 - i, 1, 1, 0xff), pixels[i]);
+		}
+	}
+
+	@Test
+	public void satValMatchesGoldenImage() throws IOException {
+		for (int hue : new int[] { 0, 75, 210, 330 }) {
+			final int[] pixels = new int[SIZE * SIZE];
+			ColorPanelRasterizer.renderSatVal(hue, pixels, 0, SIZE, SIZE, SIZE);
+			assertEquals(0xffffffff, pixels[0]);
+			assertEquals(ColorMath.hsvToArgb(hue, 1, 1, 0xff), pixels[SIZE - 1]);
+			assertEquals(0xff000000, pixels[SIZE * (SIZE - 1)]);
+			assertEquals(0xff000000, pixels[SIZE * SIZE - 1]);
+			assertGolden("sat_val_" + hue + ".png", pixels, SIZE, SIZE);
+		}
+	}
+
+	@Test
+	public void satValHonorsOffsetAndStride() {
+		final int stride = SIZE + 3, offset = stride * 2 + 1;
+		final int[] expected = new int[SIZE * SIZE];
+		final int[] pixels = new int[offset + stride * SIZE];
+		ColorPanelRasterizer.renderSatVal(120, expected, 0, SIZE, SIZE, SIZE);
+		ColorPanelRasterizer.renderSatVal(120, pixels, offset, stride, SIZE, SIZE);
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				assertEquals(expected[y * SIZE + x], pixels[offset + y * stride + x]);
+			}
+		}
+		assertEquals(0, pixels[offset - 1]);
+		assertEquals(0, pixels[offset + SIZE]);
+	}
+
+	private void assertGolden(String name, int[] pixels, int width, int height) throws IOException {
+		final String recordDir = System.getProperty("golden.record");
+		if (recordDir != null) {
+			final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			image.setRGB(0, 0, width, height, pixels, 0, width);
+			ImageIO.write(image, "png", new File(recordDir, "org/mariotaku/preference/golden/" + name));
+			return;
+		}
+		final InputStream in = getClass().getResourceAsStream("golden/" + name);
+		assertNotNull("Missing golden image " + name, in);
+		final BufferedImage golden;
+		try {
+			golden = ImageIO.read(in);
+		} finally {
+			in.close();
+		}
+		assertEquals(name + " width", width, golden.getWidth());
+		assertEquals(name + " height", height, golden.getHeight());
+		final int[] expected = golden.getRGB(0, 0, width, height, null, 0, width);
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] != pixels[i]) {
+				fail(String.format("%s differs at (%d, %d): expected #%08x, got #%08x", name, i % width, i / width,
+						expected[i], pixels[i]));
+			}
+		}
+	}
+}
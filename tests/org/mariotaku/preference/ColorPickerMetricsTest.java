@@ -0,0 +1,106 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View.MeasureSpec;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mariotaku.preference.ColorPickerPreference.ColorPickerDialog;
+import org.mariotaku.preference.ColorPickerPreference.ColorPickerDialog.ColorPickerView;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Dragging the hue reports the saturation/value textures picked up once they
+ * are rendered in the background.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ColorPickerMetricsTest {
+
+	private static final int WIDTH = 600, HEIGHT = 560;
+	private static final int MOVE_COUNT = 50;
+	private static final long TIMEOUT_MILLIS = 5000;
+
+	@Test
+	public void hueDragReportsTextureRebuilds() throws InterruptedException {
+		final Context context = RuntimeEnvironment.application;
+		final ColorPickerDialog dialog = new ColorPickerDialog(context, 0xff336699);
+		final TestColorPickerView view = new TestColorPickerView(dialog, context);
+		final ColorPickerMetrics metrics = new ColorPickerMetrics();
+		view.setMetricsListener(metrics);
+		view.setColor(0xff336699);
+		view.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+		view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+		view.draw();
+		assertEquals(0, metrics.getSatValTextureRebuildCount());
+
+		final float x = 0.97f * view.getWidth();
+		final long downTime = SystemClock.uptimeMillis();
+		assertTrue(view.onTouchEvent(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x,
+				0.1f * view.getHeight(), 0)));
+		for (int i = 1; i <= MOVE_COUNT; i++) {
+			final float y = (0.1f + 0.8f * i / MOVE_COUNT) * view.getHeight();
+			view.onTouchEvent(MotionEvent.obtain(downTime, downTime + i, MotionEvent.ACTION_MOVE, x, y, 0));
+			view.runQueued();
+			view.draw();
+		}
+		view.onTouchEvent(MotionEvent.obtain(downTime, downTime + MOVE_COUNT + 1, MotionEvent.ACTION_UP, x,
+				0.9f * view.getHeight(), 0));
+
+		// The texture of the last hue is picked up by a later frame.
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (metrics.getSatValTextureRebuildCount() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			view.draw();
+		}
+		assertTrue(metrics.getSatValTextureRebuildCount() > 0);
+	}
+
+	private static final class TestColorPickerView extends ColorPickerView {
+
+		private final Canvas mCanvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Config.ARGB_8888));
+		private Runnable mQueued;
+
+		TestColorPickerView(ColorPickerDialog dialog, Context context) {
+			dialog.super(context);
+		}
+
+		/**
+		 * Robolectric's View.draw doesn't call onDraw.
+		 */
+		void draw() {
+			onDraw(mCanvas);
+		}
+
+		void runQueued() {
+			final Runnable queued = mQueued;
+			mQueued = null;
+			if (queued != null) {
+				queued.run();
+			}
+		}
+
+		@Override
+		public boolean postDelayed(Runnable action, long delayMillis) {
+			mQueued = action;
+			return true;
+		}
+
+		@Override
+		public boolean removeCallbacks(Runnable action) {
+			if (mQueued == action) {
+				mQueued = null;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewGroup.OnHierarchyChangeListener;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class ColorPickerPreferenceBindTest {
+
+	private static final int BIND_COUNT = 10000;
+
+	@Test
+	public void recycledRowReusesThePreviewView() {
+		final Context context = RuntimeEnvironment.application;
+		final ColorPickerPreference[] preferences = new ColorPickerPreference[3];
+		for (int i = 0; i < preferences.length; i++) {
+			preferences[i] = new ColorPickerPreference(context);
+			preferences[i].setPersistent(false);
+			preferences[i].applyValue(0x80102030 + i);
+		}
+		final ViewGroup parent = new FrameLayout(context);
+		final View row = preferences[0].getView(null, parent);
+		final ViewGroup widgetFrame = (ViewGroup) row.findViewById(android.R.id.widget_frame);
+		assertNotNull(widgetFrame);
+		final ImageView preview = (ImageView) widgetFrame.getChildAt(0);
+		final int[] createdViews = new int[1];
+		widgetFrame.setOnHierarchyChangeListener(new OnHierarchyChangeListener() {
+
+			@Override
+			public void onChildViewAdded(View parent, View child) {
+				createdViews[0]++;
+			}
+
+			@Override
+			public void onChildViewRemoved(View parent, View child) {
+
+			}
+		});
+
+		for (int i = 0; i < BIND_COUNT; i++) {
+			final ColorPickerPreference preference = preferences[i % preferences.length];
+			assertSame(row, preference.getView(row, parent));
+			assertEquals(preference.getValue(), ((ColorSwatchDrawable) preview.getDrawable()).getColor());
+		}
+
+		assertEquals(0, createdViews[0]);
+		assertEquals(1, widgetFrame.getChildCount());
+		assertSame(preview, widgetFrame.getChildAt(0));
+	}
+}
@@ -0,0 +1,106 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View.MeasureSpec;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mariotaku.preference.ColorPickerPreference.ColorPickerDialog;
+import org.mariotaku.preference.ColorPickerPreference.ColorPickerDialog.ColorPickerView;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * A coalesced touch move is carried forward to the time it is applied, with
+ * the velocity from the sample received before it.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ColorPickerTouchTest {
+
+	private static final int WIDTH = 600, HEIGHT = 560;
+	private static final int SAMPLE_INTERVAL_MILLIS = 8;
+
+	@Test
+	public void coalescedMoveIsCarriedForwardWithItsVelocity() {
+
+		final long downTime = SystemClock.uptimeMillis();
+		final TestColorPickerView coalesced = createView();
+		final TestColorPickerView direct = createView();
+		final float x = 0.97f * coalesced.getWidth();
+		final float y0 = 0.2f * coalesced.getHeight(), y1 = 0.3f * coalesced.getHeight(),
+				y2 = 0.4f * coalesced.getHeight();
+		assertTrue(coalesced.onTouchEvent(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x, y0, 0)));
+		assertTrue(direct.onTouchEvent(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x, y0, 0)));
+
+		// Two moves coalesced into one update, applied one sample interval
+		// after the latest sample. The test runtime drops the samples batched
+		// in a move event, so the earlier event stands in for them.
+		final long t1 = downTime + SAMPLE_INTERVAL_MILLIS, t2 = t1 + SAMPLE_INTERVAL_MILLIS;
+		final long t3 = t2 + SAMPLE_INTERVAL_MILLIS;
+		coalesced.onTouchEvent(MotionEvent.obtain(downTime, t1, MotionEvent.ACTION_MOVE, x, y1, 0));
+		coalesced.onTouchEvent(MotionEvent.obtain(downTime, t2, MotionEvent.ACTION_MOVE, x, y2, 0));
+		Robolectric.getForegroundThreadScheduler().advanceTo(t3);
+		coalesced.runQueued();
+
+		// The same position, reached by a move applied right away.
+		direct.onTouchEvent(MotionEvent.obtain(downTime, t3, MotionEvent.ACTION_MOVE, x, y2 + (y2 - y1), 0));
+		direct.runQueued();
+
+		assertEquals(2, coalesced.getTouchUpdateCount());
+		assertEquals(direct.getColor(), coalesced.getColor());
+
+		// The final position is the one of the lifted finger.
+		coalesced.onTouchEvent(MotionEvent.obtain(downTime, t3, MotionEvent.ACTION_UP, x, y2, 0));
+		direct.onTouchEvent(MotionEvent.obtain(downTime, t3, MotionEvent.ACTION_UP, x, y2, 0));
+		assertEquals(direct.getColor(), coalesced.getColor());
+	}
+
+	private static TestColorPickerView createView() {
+
+		final Context context = RuntimeEnvironment.application;
+		final TestColorPickerView view = new TestColorPickerView(new ColorPickerDialog(context, 0xff336699),
+				context);
+		view.setColor(0xff336699);
+		view.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+		view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+		return view;
+	}
+
+	private static final class TestColorPickerView extends ColorPickerView {
+
+		private Runnable mQueued;
+
+		TestColorPickerView(ColorPickerDialog dialog, Context context) {
+			dialog.super(context);
+		}
+
+		void runQueued() {
+			final Runnable queued = mQueued;
+			mQueued = null;
+			if (queued != null) {
+				queued.run();
+			}
+		}
+
+		@Override
+		public boolean postDelayed(Runnable action, long delayMillis) {
+			mQueued = action;
+			return true;
+		}
+
+		@Override
+		public boolean removeCallbacks(Runnable action) {
+			if (mQueued == action) {
+				mQueued = null;
+			}
+			return true;
+		}
+	}
+}
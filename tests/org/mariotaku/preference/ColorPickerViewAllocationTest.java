@@ -0,0 +1,213 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View.MeasureSpec;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mariotaku.preference.ColorPickerPreference.ColorPickerDialog;
+import org.mariotaku.preference.ColorPickerPreference.ColorPickerDialog.ColorPickerView;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.shadows.ShadowDrawable;
+
+/**
+ * Counts the bytes allocated by the UI thread while dragging in the color
+ * picker. The framework calls which allocate under Robolectric but not on a
+ * device are stubbed: queued runnables are run by the test, as a device
+ * would through pooled messages, frames are drawn on a canvas which draws
+ * nothing, and drawables invalidate themselves without reflection.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ColorPickerViewAllocationTest.ShadowCallbackDrawable.class)
+public class ColorPickerViewAllocationTest {
+
+	private static final int WIDTH = 600, HEIGHT = 560;
+	private static final int EVENT_COUNT = 2000;
+	private static final int MEASURED_ROUNDS = 4;
+
+	@Test
+	public void steadyStateDragAllocatesNothing() {
+		final Context context = RuntimeEnvironment.application;
+		final ColorPickerDialog dialog = new ColorPickerDialog(context, 0x80336699);
+		final TestColorPickerView view = new TestColorPickerView(dialog, context);
+		view.setAlphaSliderVisible(true);
+		view.setColor(0x80336699);
+		view.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+		view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+
+		// Saturation/value panel.
+		int color = view.getColor();
+		assertEquals(0, drag(view, 0.25f, 0.25f, 0.5f, 0));
+		assertTrue((view.getColor() & 0xffffff) != (color & 0xffffff));
+		// Hue panel, whose textures are rendered off the UI thread. A first
+		// drag warms up moves that find their texture missing or just rendered.
+		final float[] hsv = new float[3];
+		ColorMath.argbToHsv(view.getColor(), hsv);
+		final float hue = hsv[0];
+		drag(view, 0.97f, 0.1f, 0, 0.6f);
+		assertEquals(0, drag(view, 0.97f, 0.1f, 0, 0.6f));
+		ColorMath.argbToHsv(view.getColor(), hsv);
+		assertTrue(hsv[0] != hue);
+		// Alpha panel.
+		color = view.getColor();
+		assertEquals(0, drag(view, 0.1f, 0.97f, 0.7f, 0));
+		assertTrue(view.getColor() >>> 24 != color >>> 24);
+	}
+
+	/**
+	 * Drag back and forth along a line, starting at a point given as a
+	 * fraction of the view size.
+	 *
+	 * @return fewest bytes allocated by a round of moves, out of the rounds
+	 *         the second half of the moves is split into.
+	 */
+	private static long drag(TestColorPickerView view, float x, float y, float spanX, float spanY) {
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		final long thread = Thread.currentThread().getId();
+		final float x0 = x * view.getWidth(), y0 = y * view.getHeight();
+		final float dx = spanX * view.getWidth(), dy = spanY * view.getHeight();
+		final long downTime = SystemClock.uptimeMillis();
+		final MotionEvent[] moves = new MotionEvent[EVENT_COUNT];
+		for (int i = 0; i < EVENT_COUNT; i++) {
+			moves[i] = MotionEvent.obtain(downTime, downTime + i, MotionEvent.ACTION_MOVE, x0 + dx * (i % 100) / 100,
+					y0 + dy * (i % 100) / 100, 0);
+		}
+		assertTrue(view.onTouchEvent(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x0, y0, 0)));
+		final int warmup = EVENT_COUNT / 2;
+		for (int i = 0; i < warmup; i++) {
+			view.drag(moves[i]);
+		}
+		// A move allocating allocates in every round, while the JIT may
+		// allocate once when it recompiles the drag path.
+		final int roundSize = (EVENT_COUNT - warmup) / MEASURED_ROUNDS;
+		long allocated = Long.MAX_VALUE;
+		for (int round = 0; round < MEASURED_ROUNDS; round++) {
+			final long before = threads.getThreadAllocatedBytes(thread);
+			for (int i = warmup + round * roundSize, j = i + roundSize; i < j; i++) {
+				view.drag(moves[i]);
+			}
+			allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+		}
+		view.onTouchEvent(MotionEvent.obtain(downTime, downTime + EVENT_COUNT, MotionEvent.ACTION_UP, x0 + dx / 2,
+				y0 + dy / 2, 0));
+		return allocated;
+	}
+
+	private static final class TestColorPickerView extends ColorPickerView {
+
+		private final Canvas mCanvas = new NoOpCanvas();
+		private Runnable mQueued;
+
+		TestColorPickerView(ColorPickerDialog dialog, Context context) {
+			dialog.super(context);
+		}
+
+		void drag(MotionEvent move) {
+			onTouchEvent(move);
+			final Runnable queued = mQueued;
+			mQueued = null;
+			if (queued != null) {
+				queued.run();
+			}
+			// Robolectric's View.draw doesn't call onDraw.
+			onDraw(mCanvas);
+		}
+
+		@Override
+		public void invalidate() {
+
+		}
+
+		@Override
+		public boolean postDelayed(Runnable action, long delayMillis) {
+			mQueued = action;
+			return true;
+		}
+
+		@Override
+		public boolean removeCallbacks(Runnable action) {
+			if (mQueued == action) {
+				mQueued = null;
+			}
+			return true;
+		}
+	}
+
+	private static final class NoOpCanvas extends Canvas {
+
+		@Override
+		public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+
+		}
+
+		@Override
+		public void drawCircle(float cx, float cy, float radius, Paint paint) {
+
+		}
+
+		@Override
+		public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+
+		}
+
+		@Override
+		public void drawRect(Rect r, Paint paint) {
+
+		}
+
+		@Override
+		public void drawRect(RectF rect, Paint paint) {
+
+		}
+
+		@Override
+		public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+
+		}
+
+		@Override
+		public void drawText(String text, float x, float y, Paint paint) {
+
+		}
+	}
+
+	/**
+	 * Invalidates drawables like the framework does, Robolectric's shadow
+	 * goes through reflection.
+	 */
+	@Implements(Drawable.class)
+	public static class ShadowCallbackDrawable extends ShadowDrawable {
+
+		@RealObject
+		private Drawable mRealDrawable;
+
+		@Override
+		@Implementation
+		public void invalidateSelf() {
+			final Drawable.Callback callback = mRealDrawable.getCallback();
+			if (callback != null) {
+				callback.invalidateDrawable(mRealDrawable);
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.preference.Preference;
+import android.preference.Preference.OnPreferenceClickListener;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowDialog;
+import org.robolectric.shadows.ShadowLooper;
+
+/**
+ * Time from a preference click to the first frame of its dialog, as recorded
+ * by {@link DialogPool}, when the dialog is built and when it is taken from
+ * the pool of the activity. The latencies are reported in the test output;
+ * their ordering isn't stable on a loaded machine, so only the reuse of the
+ * pooled dialog and its view tree is asserted.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DialogOpenLatencyTest {
+
+	private static final int WIDTH = 480, HEIGHT = 800;
+	private static final int ROUNDS = 10;
+
+	private Activity mActivity;
+
+	@After
+	public void tearDown() {
+
+		if (mActivity != null) {
+			DialogPool.release(mActivity);
+		}
+	}
+
+	@Test
+	public void colorPickerOpensToFirstFrame() {
+
+		mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+		final ColorPickerPreference preference = new ColorPickerPreference(mActivity);
+		preference.setPersistent(false);
+		measure("color picker", preference);
+	}
+
+	@Test
+	public void seekBarOpensToFirstFrame() {
+
+		mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+		final SeekBarPreference preference = new SeekBarPreference(mActivity);
+		preference.setPersistent(false);
+		measure("seek bar", preference);
+	}
+
+	@Test
+	public void textSizeOpensToFirstFrame() {
+
+		mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+		final TextSizePreference preference = new TextSizePreference(mActivity);
+		preference.setPersistent(false);
+		measure("text size", preference);
+	}
+
+	private static void measure(String name, Preference preference) {
+
+		final long cold = clickToFirstFrame(preference);
+		final Dialog dialog = ShadowDialog.getLatestDialog();
+		final View content = getContent(dialog);
+		dialog.dismiss();
+		final long[] warm = new long[ROUNDS];
+		for (int i = 0; i < ROUNDS; i++) {
+			warm[i] = clickToFirstFrame(preference);
+			// The pooled dialog is shown again, without creating its view
+			// tree again.
+			assertSame(dialog, ShadowDialog.getLatestDialog());
+			assertSame(content, getContent(dialog));
+			dialog.dismiss();
+		}
+		Arrays.sort(warm);
+		System.out.printf("%s dialog, click to first frame: %d ms cold, %d ms pooled (median)%n", name, cold,
+				warm[ROUNDS / 2]);
+	}
+
+	/**
+	 * Click a preference, and run the first frame of its dialog the way the
+	 * view root would, since the test runtime doesn't schedule traversals.
+	 * Its clock doesn't move by itself either, so it is advanced by the time
+	 * actually spent before the frame is drawn.
+	 *
+	 * @return latency recorded by {@link DialogPool}, in milliseconds.
+	 */
+	private static long clickToFirstFrame(Preference preference) {
+
+		final long start = System.nanoTime();
+		((OnPreferenceClickListener) preference).onPreferenceClick(preference);
+		ShadowLooper.runUiThreadTasks();
+		final View decorView = ShadowDialog.getLatestDialog().getWindow().getDecorView();
+		decorView.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.AT_MOST));
+		decorView.layout(0, 0, decorView.getMeasuredWidth(), decorView.getMeasuredHeight());
+		final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		Robolectric.getForegroundThreadScheduler().advanceBy(elapsed, TimeUnit.MILLISECONDS);
+		decorView.getViewTreeObserver().dispatchOnPreDraw();
+		decorView.draw(new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Config.ARGB_8888)));
+		assertEquals(elapsed, DialogPool.getLastOpenLatencyMillis());
+		return DialogPool.getLastOpenLatencyMillis();
+	}
+
+	private static View getContent(Dialog dialog) {
+
+		return ((ViewGroup) dialog.findViewById(android.R.id.content)).getChildAt(0);
+	}
+}
@@ -0,0 +1,158 @@
+package org.mariotaku.preference;
+
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SharedPreferences kept in memory, since the file backed implementation
+ * can't load in the test runtime before API 21. Counts the editor
+ * transactions, and like the framework only calls the listeners for values
+ * which changed.
+ */
+final class InMemorySharedPreferences implements SharedPreferences {
+
+	final Map<String, Object> values = new HashMap<String, Object>();
+	final ArrayList<OnSharedPreferenceChangeListener> listeners = new ArrayList<OnSharedPreferenceChangeListener>();
+	int commitCount;
+
+	@Override
+	public boolean contains(String key) {
+		return values.containsKey(key);
+	}
+
+	@Override
+	public Editor edit() {
+		return new InMemoryEditor();
+	}
+
+	@Override
+	public Map<String, ?> getAll() {
+		return new HashMap<String, Object>(values);
+	}
+
+	@Override
+	public boolean getBoolean(String key, boolean defValue) {
+		return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+	}
+
+	@Override
+	public float getFloat(String key, float defValue) {
+		return values.containsKey(key) ? (Float) values.get(key) : defValue;
+	}
+
+	@Override
+	public int getInt(String key, int defValue) {
+		return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+	}
+
+	@Override
+	public long getLong(String key, long defValue) {
+		return values.containsKey(key) ? (Long) values.get(key) : defValue;
+	}
+
+	@Override
+	public String getString(String key, String defValue) {
+		return values.containsKey(key) ? (String) values.get(key) : defValue;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Set<String> getStringSet(String key, Set<String> defValues) {
+		return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+	}
+
+	@Override
+	public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	private final class InMemoryEditor implements Editor {
+
+		private final Map<String, Object> mChanges = new HashMap<String, Object>();
+		private boolean mClear;
+
+		@Override
+		public void apply() {
+			commit();
+		}
+
+		@Override
+		public Editor clear() {
+			mClear = true;
+			return this;
+		}
+
+		@Override
+		public boolean commit() {
+			commitCount++;
+			if (mClear) {
+				values.clear();
+			}
+			for (Map.Entry<String, Object> entry : mChanges.entrySet()) {
+				final Object previous;
+				if (entry.getValue() != null) {
+					previous = values.put(entry.getKey(), entry.getValue());
+				} else {
+					previous = values.remove(entry.getKey());
+				}
+				if (entry.getValue() == null ? previous == null : entry.getValue().equals(previous)) continue;
+				for (OnSharedPreferenceChangeListener listener : new ArrayList<OnSharedPreferenceChangeListener>(
+						listeners)) {
+					listener.onSharedPreferenceChanged(InMemorySharedPreferences.this, entry.getKey());
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public Editor putBoolean(String key, boolean value) {
+			mChanges.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor putFloat(String key, float value) {
+			mChanges.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor putInt(String key, int value) {
+			mChanges.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor putLong(String key, long value) {
+			mChanges.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor putString(String key, String value) {
+			mChanges.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor putStringSet(String key, Set<String> values) {
+			mChanges.put(key, values);
+			return this;
+		}
+
+		@Override
+		public Editor remove(String key) {
+			mChanges.put(key, null);
+			return this;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Load and write latency of a {@link MappedLogStorage} against the file
+ * backed {@link SharedPreferences} of the framework, both holding the values
+ * of a screen of preferences. Runs on API 21, the first framework whose
+ * SharedPreferences load in the test runtime, where framework code is
+ * instrumented and somewhat slower than on a device. The medians are only
+ * reported, since their ordering isn't stable on a loaded machine;
+ * {@link MappedLogStorageDiskUsageTest} asserts what each write costs on disk.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21)
+public class MappedLogStorageBenchmarkTest {
+
+	private static final int KEY_COUNT = 100;
+	private static final int BATCH_SIZE = 10;
+	private static final int ROUNDS = 50;
+
+	private Context mContext;
+	private File mDir;
+
+	@Before
+	public void setUp() {
+
+		mContext = RuntimeEnvironment.application;
+		mDir = mContext.getDir("benchmark", Context.MODE_PRIVATE);
+	}
+
+	@Test
+	public void loadScreenOfValues() throws IOException {
+
+		final SharedPreferences preferences = mContext.getSharedPreferences("load", Context.MODE_PRIVATE);
+		final SharedPreferences.Editor editor = preferences.edit();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			editor.putInt(getKey(i), i);
+		}
+		assertTrue(editor.commit());
+		final File preferencesFile = new File(mContext.getFilesDir().getParentFile(), "shared_prefs/load.xml");
+		assertTrue(preferencesFile.isFile());
+		final File logFile = new File(mDir, "load.log");
+		assertTrue(MappedLogStorage.get(logFile).write(getValues(0, KEY_COUNT, 0)));
+
+		final long[] sharedPreferencesTimes = new long[ROUNDS], logTimes = new long[ROUNDS];
+		for (int round = 0; round < ROUNDS; round++) {
+			// Both cache their instances by file, load copies instead.
+			final String name = "load_" + round;
+			copy(preferencesFile, new File(preferencesFile.getParentFile(), name + ".xml"));
+			copy(logFile, new File(mDir, name + ".log"));
+
+			long start = System.nanoTime();
+			final SharedPreferences loaded = mContext.getSharedPreferences(name, Context.MODE_PRIVATE);
+			assertEquals(KEY_COUNT - 1, loaded.getInt(getKey(KEY_COUNT - 1), -1));
+			sharedPreferencesTimes[round] = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			final MappedLogStorage storage = MappedLogStorage.get(new File(mDir, name + ".log"));
+			assertEquals(KEY_COUNT - 1, storage.getInt(getKey(KEY_COUNT - 1), -1));
+			logTimes[round] = System.nanoTime() - start;
+		}
+		print("load " + KEY_COUNT + " values", sharedPreferencesTimes, logTimes);
+	}
+
+	@Test
+	public void writeSingleValue() throws IOException {
+
+		measureWrites(1);
+	}
+
+	@Test
+	public void writeBatchOfValues() throws IOException {
+
+		measureWrites(BATCH_SIZE);
+	}
+
+	private void measureWrites(int batchSize) throws IOException {
+
+		final String name = "write_" + batchSize;
+		final SharedPreferences preferences = mContext.getSharedPreferences(name, Context.MODE_PRIVATE);
+		final SharedPreferences.Editor editor = preferences.edit();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			editor.putInt(getKey(i), i);
+		}
+		assertTrue(editor.commit());
+		final MappedLogStorage storage = MappedLogStorage.get(new File(mDir, name + ".log"));
+		assertTrue(storage.write(getValues(0, KEY_COUNT, 0)));
+
+		final long[] sharedPreferencesTimes = new long[ROUNDS], logTimes = new long[ROUNDS];
+		for (int round = 0; round < ROUNDS; round++) {
+			final int first = round * batchSize % KEY_COUNT;
+			final Map<String, Object> values = getValues(first, batchSize, round + 1);
+
+			long start = System.nanoTime();
+			final SharedPreferences.Editor batch = preferences.edit();
+			for (Map.Entry<String, Object> entry : values.entrySet()) {
+				batch.putInt(entry.getKey(), (Integer) entry.getValue());
+			}
+			assertTrue(batch.commit());
+			sharedPreferencesTimes[round] = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			assertTrue(storage.write(values));
+			logTimes[round] = System.nanoTime() - start;
+
+			assertEquals(preferences.getInt(getKey(first), -1), storage.getInt(getKey(first), -2));
+		}
+		print("write " + batchSize + " of " + KEY_COUNT + " values", sharedPreferencesTimes, logTimes);
+	}
+
+	private static void copy(File from, File to) throws IOException {
+
+		final FileInputStream in = new FileInputStream(from);
+		try {
+			final FileOutputStream out = new FileOutputStream(to);
+			try {
+				final byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) != -1;) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String getKey(int i) {
+		return "preference_" + i;
+	}
+
+	/**
+	 * @return values of consecutive keys, wrapping around after the last key.
+	 */
+	private static Map<String, Object> getValues(int first, int count, int offset) {
+
+		final Map<String, Object> values = new HashMap<String, Object>();
+		for (int i = 0; i < count; i++) {
+			final int key = (first + i) % KEY_COUNT;
+			values.put(getKey(key), key + offset);
+		}
+		return values;
+	}
+
+	private static long median(long[] times) {
+
+		final long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	private static void print(String operation, long[] sharedPreferencesTimes, long[] logTimes) {
+		System.out.printf("%s: SharedPreferences %.3f ms, MappedLogStorage %.3f ms%n", operation,
+				median(sharedPreferencesTimes) / 1e6, median(logTimes) / 1e6);
+	}
+}
@@ -0,0 +1,165 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Disk usage of a {@link MappedLogStorage} against the file backed
+ * {@link SharedPreferences} of the framework, both holding the values of a
+ * screen of preferences. A batch of values appends one record per value and a
+ * commit record, synced once, where SharedPreferences rewrite their whole
+ * file. Runs on API 21, the first framework whose SharedPreferences load in
+ * the test runtime.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21)
+public class MappedLogStorageDiskUsageTest {
+
+	private static final int KEY_COUNT = 100;
+	private static final int BATCH_SIZE = 10;
+	private static final int ROUNDS = 50;
+	private static final int RECORD_SIZE = 16;
+
+	private Context mContext;
+	private File mDir;
+
+	@Before
+	public void setUp() {
+
+		mContext = RuntimeEnvironment.application;
+		mDir = mContext.getDir("disk_usage", Context.MODE_PRIVATE);
+	}
+
+	@Test
+	public void loadScreenOfValues() throws IOException {
+
+		final SharedPreferences preferences = mContext.getSharedPreferences("load", Context.MODE_PRIVATE);
+		final SharedPreferences.Editor editor = preferences.edit();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			editor.putInt(getKey(i), i);
+		}
+		assertTrue(editor.commit());
+		final File preferencesFile = getPreferencesFile("load");
+		final File logFile = new File(mDir, "load.log");
+		final MappedLogStorage storage = MappedLogStorage.get(logFile);
+		assertTrue(storage.write(getValues(0, KEY_COUNT, 0)));
+		assertEquals(1, storage.getSyncCount());
+		assertTrue(storage.getLogSize() < preferencesFile.length());
+
+		// Instances are cached by file, load a copy instead.
+		final File copy = new File(mDir, "load_copy.log");
+		copy(logFile, copy);
+		final MappedLogStorage loaded = MappedLogStorage.get(copy);
+		assertEquals(storage.getLogSize(), loaded.getLogSize());
+		for (int i = 0; i < KEY_COUNT; i++) {
+			assertEquals(i, loaded.getInt(getKey(i), -1));
+		}
+	}
+
+	@Test
+	public void writeSingleValue() throws IOException {
+
+		measureWrites(1);
+	}
+
+	@Test
+	public void writeBatchOfValues() throws IOException {
+
+		measureWrites(BATCH_SIZE);
+	}
+
+	private void measureWrites(int batchSize) throws IOException {
+
+		final String name = "write_" + batchSize;
+		final SharedPreferences preferences = mContext.getSharedPreferences(name, Context.MODE_PRIVATE);
+		final SharedPreferences.Editor editor = preferences.edit();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			editor.putInt(getKey(i), i);
+		}
+		assertTrue(editor.commit());
+		final File preferencesFile = getPreferencesFile(name);
+		final MappedLogStorage storage = MappedLogStorage.get(new File(mDir, name + ".log"));
+		assertTrue(storage.write(getValues(0, KEY_COUNT, 0)));
+
+		for (int round = 0; round < ROUNDS; round++) {
+			final int first = round * batchSize % KEY_COUNT;
+			final Map<String, Object> values = getValues(first, batchSize, round + 1);
+
+			final SharedPreferences.Editor batch = preferences.edit();
+			for (Map.Entry<String, Object> entry : values.entrySet()) {
+				batch.putInt(entry.getKey(), (Integer) entry.getValue());
+			}
+			assertTrue(batch.commit());
+
+			final int logSize = storage.getLogSize();
+			final int syncCount = storage.getSyncCount();
+			assertTrue(storage.write(values));
+			final int appended = storage.getLogSize() - logSize;
+			assertEquals((batchSize + 1) * RECORD_SIZE, appended);
+			assertEquals(1, storage.getSyncCount() - syncCount);
+			// SharedPreferences rewrite their whole file on every commit.
+			assertTrue(appended < preferencesFile.length());
+
+			assertEquals(preferences.getInt(getKey(first), -1), storage.getInt(getKey(first), -2));
+		}
+	}
+
+	private File getPreferencesFile(String name) {
+
+		final File file = new File(mContext.getFilesDir().getParentFile(), "shared_prefs/" + name + ".xml");
+		assertTrue(file.isFile());
+		return file;
+	}
+
+	private static void copy(File from, File to) throws IOException {
+
+		final FileInputStream in = new FileInputStream(from);
+		try {
+			final FileOutputStream out = new FileOutputStream(to);
+			try {
+				final byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) != -1;) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String getKey(int i) {
+		return "preference_" + i;
+	}
+
+	/**
+	 * @return values of consecutive keys, wrapping around after the last key.
+	 */
+	private static Map<String, Object> getValues(int first, int count, int offset) {
+
+		final Map<String, Object> values = new HashMap<String, Object>();
+		for (int i = 0; i < count; i++) {
+			final int key = (first + i) % KEY_COUNT;
+			values.put(getKey(key), key + offset);
+		}
+		return values;
+	}
+}
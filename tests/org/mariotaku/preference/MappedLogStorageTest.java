@@ -0,0 +1,252 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+/**
+ * Recovery of a {@link MappedLogStorage} from the logs left by interrupted
+ * and corrupted writes, and from compacted logs, and the handling of applied
+ * values. Instances are cached by file, so logs are reopened from copies.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MappedLogStorageTest {
+
+	@Rule
+	public final TemporaryFolder mFolder = new TemporaryFolder();
+
+	private int mCopyCount;
+
+	@Test
+	public void tornBatchIsDropped() throws IOException {
+
+		final File file = mFolder.newFile("torn.log");
+		final MappedLogStorage storage = MappedLogStorage.get(file);
+		assertTrue(storage.write(values("first", 1)));
+		final int committed = storage.getLogSize();
+		assertTrue(storage.write(values("first", 2, "second", 3)));
+		// A crash before the commit record of the second batch was written.
+		zero(file, storage.getLogSize() - 16, 16);
+
+		final File reopenedFile = copy(file);
+		final MappedLogStorage reopened = MappedLogStorage.get(reopenedFile);
+		assertEquals(1, reopened.getInt("first", -1));
+		assertFalse(reopened.contains("second"));
+		assertEquals(committed, reopened.getLogSize());
+
+		// The dropped records are gone, and can't be mistaken for a part of
+		// the next batch.
+		assertTrue(reopened.write(values("third", 4)));
+		final MappedLogStorage again = MappedLogStorage.get(copy(reopenedFile));
+		assertEquals(1, again.getInt("first", -1));
+		assertFalse(again.contains("second"));
+		assertEquals(4, again.getInt("third", -1));
+	}
+
+	@Test
+	public void corruptedRecordDropsTheBatchesFromIt() throws IOException {
+
+		final File file = mFolder.newFile("corrupted.log");
+		final MappedLogStorage storage = MappedLogStorage.get(file);
+		assertTrue(storage.write(values("first", 1)));
+		final int firstEnd = storage.getLogSize();
+		assertTrue(storage.write(values("second", 2)));
+		assertTrue(storage.write(values("third", 3)));
+		// Flip a byte of the key record of the middle batch.
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(firstEnd + 4);
+			final int b = raf.read();
+			raf.seek(firstEnd + 4);
+			raf.write(b ^ 0xff);
+		} finally {
+			raf.close();
+		}
+
+		final MappedLogStorage reopened = MappedLogStorage.get(copy(file));
+		assertEquals(1, reopened.getInt("first", -1));
+		assertFalse(reopened.contains("second"));
+		assertFalse(reopened.contains("third"));
+		assertEquals(firstEnd, reopened.getLogSize());
+	}
+
+	@Test
+	public void compactedLogReopens() throws IOException {
+
+		final File file = mFolder.newFile("compacted.log");
+		final MappedLogStorage storage = MappedLogStorage.get(file);
+		int size = 0, round = 0;
+		// Rewrite the same keys until the log is compacted.
+		for (; round < 10000 && storage.getLogSize() >= size; round++) {
+			size = storage.getLogSize();
+			final Map<String, Object> values = new HashMap<String, Object>();
+			for (int i = 0; i < 10; i++) {
+				values.put("key_" + i, round * 10 + i);
+			}
+			assertTrue(storage.write(values));
+		}
+		assertTrue(storage.getLogSize() < size);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		// Both the compacted log and the batches appended to it are replayed.
+		assertTrue(storage.write(values("key_0", -1, "appended", 1f)));
+		final MappedLogStorage reopened = MappedLogStorage.get(copy(file));
+		assertEquals(-1, reopened.getInt("key_0", 0));
+		for (int i = 1; i < 10; i++) {
+			assertEquals((round - 1) * 10 + i, reopened.getInt("key_" + i, -1));
+		}
+		assertEquals(1f, reopened.getFloat("appended", 0), 0);
+		assertEquals(storage.getLogSize(), reopened.getLogSize());
+	}
+
+	@Test
+	public void manyKeysReplayWithTheirIds() throws IOException {
+
+		final File file = mFolder.newFile("keys.log");
+		final MappedLogStorage storage = MappedLogStorage.get(file);
+		final int keyCount = 1000;
+		for (int batch = 0; batch < 10; batch++) {
+			final Map<String, Object> values = new HashMap<String, Object>();
+			for (int i = batch * 100; i < (batch + 1) * 100; i++) {
+				values.put("key_" + i, i % 2 == 0 ? (Object) i : (Object) (i + 0.5f));
+			}
+			assertTrue(storage.write(values));
+		}
+		// Overwrite keys of every batch, through the ids they got.
+		final Map<String, Object> updates = new HashMap<String, Object>();
+		for (int i = 0; i < keyCount; i += 7) {
+			updates.put("key_" + i, i % 2 == 0 ? (Object) (-i) : (Object) (-i - 0.5f));
+		}
+		assertTrue(storage.write(updates));
+
+		final MappedLogStorage reopened = MappedLogStorage.get(copy(file));
+		for (int i = 0; i < keyCount; i++) {
+			final int sign = i % 7 == 0 ? -1 : 1;
+			if (i % 2 == 0) {
+				assertEquals(sign * i, reopened.getInt("key_" + i, Integer.MIN_VALUE));
+			} else {
+				assertEquals(sign * (i + 0.5f), reopened.getFloat("key_" + i, Float.NaN), 0);
+				try {
+					reopened.getInt("key_" + i, 0);
+					fail("key_" + i + " is a float");
+				} catch (ClassCastException e) {
+					// Expected.
+				}
+			}
+		}
+		assertFalse(reopened.contains("key_" + keyCount));
+	}
+
+	@Test
+	public void appliedValueIsReportedRightAway() throws IOException {
+
+		final MappedLogStorage storage = MappedLogStorage.get(mFolder.newFile("apply.log"));
+		final ArrayList<String> changed = new ArrayList<String>();
+		storage.registerOnChangeListener(new PreferenceStorage.OnChangeListener() {
+
+			@Override
+			public void onStorageChanged(PreferenceStorage storage, String key) {
+				changed.add(key);
+			}
+		});
+		storage.apply("first", 1);
+		assertEquals(Arrays.asList("first"), changed);
+		assertEquals(1, storage.getInt("first", -1));
+		storage.apply("first", 1);
+		assertEquals(1, changed.size());
+		// Writing the applied value changes nothing the listeners don't know.
+		assertTrue(storage.write(values("first", 1)));
+		ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+		assertEquals(1, changed.size());
+	}
+
+	@Test
+	public void tooLongKeyIsRejectedWhenApplied() throws IOException {
+
+		final File file = mFolder.newFile("long_key.log");
+		final MappedLogStorage storage = MappedLogStorage.get(file);
+		final char[] chars = new char[0x10000];
+		Arrays.fill(chars, 'k');
+		final String key = new String(chars);
+		try {
+			storage.apply(key, 1);
+			fail("Applied a key longer than a key record");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+		assertFalse(storage.contains(key));
+		// A value written directly is skipped, along with its key.
+		assertTrue(storage.write(values(key, 1, "short", 2)));
+		assertFalse(storage.contains(key));
+		assertEquals(2, storage.getInt("short", -1));
+		final MappedLogStorage reopened = MappedLogStorage.get(copy(file));
+		assertFalse(reopened.contains(key));
+		assertEquals(2, reopened.getInt("short", -1));
+	}
+
+	/**
+	 * @return a new copy of a log, which opens as a new storage.
+	 */
+	private File copy(File file) throws IOException {
+
+		final File copy = new File(mFolder.getRoot(), "copy_" + mCopyCount++ + ".log");
+		copy(file, copy);
+		return copy;
+	}
+
+	private static void copy(File from, File to) throws IOException {
+
+		final FileInputStream in = new FileInputStream(from);
+		try {
+			final FileOutputStream out = new FileOutputStream(to);
+			try {
+				final byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) != -1;) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Map<String, Object> values(Object... keysAndValues) {
+
+		final Map<String, Object> values = new HashMap<String, Object>();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			values.put((String) keysAndValues[i], keysAndValues[i + 1]);
+		}
+		return values;
+	}
+
+	private static void zero(File file, int offset, int length) throws IOException {
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(offset);
+			raf.write(new byte[length]);
+		} finally {
+			raf.close();
+		}
+	}
+}
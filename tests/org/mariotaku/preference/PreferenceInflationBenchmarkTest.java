@@ -0,0 +1,124 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.content.res.Resources.NotFoundException;
+import android.preference.Preference;
+import android.util.AttributeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Construction of a screen of 1,000 preferences from their attributes,
+ * resolving the dialog strings the way the constructors did before they were
+ * read lazily, and the way they do now. Both durations are reported in the
+ * test output; their ordering isn't stable on a loaded machine, so it isn't
+ * asserted.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceInflationBenchmarkTest {
+
+	private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+	private static final int PREFERENCE_COUNT = 1000;
+	private static final int ROUNDS = 5;
+
+	private Context mContext;
+	private AttributeSet[] mAttrs;
+
+	@Before
+	public void setUp() {
+
+		mContext = RuntimeEnvironment.application;
+		mAttrs = new AttributeSet[PREFERENCE_COUNT];
+		for (int i = 0; i < PREFERENCE_COUNT; i++) {
+			mAttrs[i] = Robolectric.buildAttributeSet()
+					.addAttribute(android.R.attr.title, "Preference " + i)
+					.addAttribute(android.R.attr.dialogTitle, "Dialog " + i)
+					.addAttribute(android.R.attr.dialogMessage, "Message " + i)
+					.build();
+		}
+	}
+
+	@Test
+	public void lazyStringsResolveLiterals() {
+
+		final AttributeSet attrs = mAttrs[42];
+		assertEquals("Dialog 42", LazyStringAttribute.read(attrs, ANDROID_NS, "dialogTitle").get(mContext));
+		assertEquals("Message 42", LazyStringAttribute.read(attrs, ANDROID_NS, "dialogMessage").get(mContext));
+		assertEquals(resolveEagerly(mContext, attrs, "dialogTitle"), LazyStringAttribute.read(attrs, ANDROID_NS,
+				"dialogTitle").get(mContext));
+	}
+
+	@Test
+	public void inflateThousandPreferences() {
+
+		long before = Long.MAX_VALUE, after = Long.MAX_VALUE;
+		// The first rounds warm up, the fastest round is reported.
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < PREFERENCE_COUNT; i++) {
+				inflateEagerly(i);
+			}
+			before = Math.min(before, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int i = 0; i < PREFERENCE_COUNT; i++) {
+				inflate(i);
+			}
+			after = Math.min(after, System.nanoTime() - start);
+		}
+		System.out.printf("inflate %d preferences: %.2f ms with eager dialog strings, %.2f ms lazy%n",
+				PREFERENCE_COUNT, before / 1e6, after / 1e6);
+	}
+
+	private Preference inflate(int i) {
+
+		switch (i % 3) {
+			case 0:
+				return new ColorPickerPreference(mContext, mAttrs[i]);
+			case 1:
+				return new SeekBarPreference(mContext, mAttrs[i]);
+			default:
+				return new TextSizePreference(mContext, mAttrs[i]);
+		}
+	}
+
+	/**
+	 * Construction of a preference the way it was before its dialog strings
+	 * were read lazily: the dialog title, falling back to the title, and the
+	 * dialog message of the seek bar and text size preferences were resolved
+	 * by the constructor.
+	 */
+	private Preference inflateEagerly(int i) {
+
+		final AttributeSet attrs = mAttrs[i];
+		final Preference preference = inflate(i);
+		if (resolveEagerly(mContext, attrs, "dialogTitle") == null) {
+			resolveEagerly(mContext, attrs, "title");
+		}
+		if (!(preference instanceof ColorPickerPreference)) {
+			resolveEagerly(mContext, attrs, "dialogMessage");
+		}
+		return preference;
+	}
+
+	/**
+	 * Resolution of a string attribute before it was read lazily: a literal
+	 * is only read after looking up the missing resource throws.
+	 */
+	private static String resolveEagerly(Context context, AttributeSet attrs, String name) {
+
+		try {
+			return context.getString(attrs.getAttributeResourceValue(ANDROID_NS, name, -1));
+		} catch (NotFoundException e) {
+			return attrs.getAttributeValue(ANDROID_NS, name);
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import android.content.SharedPreferences;
+import android.preference.Preference;
+import android.preference.Preference.OnPreferenceChangeListener;
+import android.preference.PreferenceActivity;
+import android.preference.PreferenceScreen;
+import android.util.AttributeSet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Profiles round-trip through their binary format, malformed ones change
+ * nothing, and applying one writes a single transaction and notifies once.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceProfilesTest {
+
+	private static final int MAGIC = 0x4d505046;
+	private static final int VERSION = 1;
+
+	private PreferenceActivity mActivity;
+	private InMemorySharedPreferences mPreferences;
+	private PreferenceScreen mScreen;
+	private ColorPickerPreference mColor;
+	private SeekBarPreference mSeekBar;
+	private TextSizePreference mTextSize;
+	private int mPreferenceChangeCount;
+
+	private final OnPreferenceChangeListener mPreferenceChangeListener = new OnPreferenceChangeListener() {
+
+		@Override
+		public boolean onPreferenceChange(Preference preference, Object newValue) {
+			mPreferenceChangeCount++;
+			return true;
+		}
+	};
+
+	@Before
+	@SuppressWarnings("deprecation")
+	public void setUp() {
+
+		final TestPreferenceActivity activity = Robolectric.buildActivity(TestPreferenceActivity.class).setup().get();
+		mActivity = activity;
+		mPreferences = activity.mPreferences;
+		mScreen = mActivity.getPreferenceManager().createPreferenceScreen(mActivity);
+		mColor = new ColorPickerPreference(mActivity, buildAttributeSet("color", "#ff336699"));
+		mSeekBar = new SeekBarPreference(mActivity, buildAttributeSet("seek_bar", "50"));
+		mTextSize = new TextSizePreference(mActivity, buildAttributeSet("text_size", "1.0"));
+		for (Preference preference : new Preference[] { mColor, mSeekBar, mTextSize }) {
+			mScreen.addPreference(preference);
+			preference.setOnPreferenceChangeListener(mPreferenceChangeListener);
+		}
+		mActivity.setPreferenceScreen(mScreen);
+		PreferenceWriteBatcher.flush();
+	}
+
+	@Test
+	public void snapshotRestoresValues() throws IOException {
+
+		mColor.applyValue(0xff102030);
+		mSeekBar.applyValue(7);
+		mTextSize.applyValue(1.5f);
+		PreferenceWriteBatcher.flush();
+		final byte[] profile = PreferenceProfiles.snapshot(mScreen);
+		PreferenceProfiles.resetToDefaults(mScreen, null);
+		PreferenceWriteBatcher.flush();
+		assertEquals(50, mSeekBar.getValue());
+
+		final int editorCommits = mPreferences.commitCount;
+		final int commits = PreferenceWriteBatcher.getCommitCount();
+		final CountingListener listener = new CountingListener();
+		assertEquals(3, PreferenceProfiles.restore(mScreen, profile, listener));
+		PreferenceWriteBatcher.flush();
+
+		assertEquals(0xff102030, mColor.getValue());
+		assertEquals(7, mSeekBar.getValue());
+		assertEquals(1.5f, mTextSize.getValue(), 0);
+		assertEquals(0xff102030, mPreferences.getInt("color", 0));
+		assertEquals(7, mPreferences.getInt("seek_bar", 0));
+		assertEquals(1.5f, mPreferences.getFloat("text_size", 0), 0);
+		// One transaction and one notification for all the values.
+		assertEquals(1, mPreferences.commitCount - editorCommits);
+		assertEquals(1, PreferenceWriteBatcher.getCommitCount() - commits);
+		assertEquals(1, listener.count);
+		assertEquals(3, listener.changed.size());
+		assertEquals(0, mPreferenceChangeCount);
+	}
+
+	@Test
+	public void restoringStoredValuesChangesNothing() throws IOException {
+
+		final byte[] profile = PreferenceProfiles.snapshot(mScreen);
+		final int editorCommits = mPreferences.commitCount;
+		final CountingListener listener = new CountingListener();
+
+		assertEquals(0, PreferenceProfiles.restore(mScreen, profile, listener));
+		PreferenceWriteBatcher.flush();
+		assertEquals(0, mPreferences.commitCount - editorCommits);
+		assertEquals(0, listener.count);
+	}
+
+	@Test
+	public void resetWritesDefaultsOnce() {
+
+		mColor.applyValue(0xff102030);
+		mSeekBar.applyValue(7);
+		PreferenceWriteBatcher.flush();
+		final int editorCommits = mPreferences.commitCount;
+		final CountingListener listener = new CountingListener();
+
+		assertEquals(2, PreferenceProfiles.resetToDefaults(mScreen, listener));
+		PreferenceWriteBatcher.flush();
+		assertEquals(0xff336699, mColor.getValue());
+		assertEquals(50, mSeekBar.getValue());
+		assertEquals(0xff336699, mPreferences.getInt("color", 0));
+		assertEquals(1, mPreferences.commitCount - editorCommits);
+		assertEquals(1, listener.count);
+		assertEquals(0, mPreferenceChangeCount);
+	}
+
+	@Test
+	public void malformedProfilesAreRejected() throws IOException {
+
+		final byte[] valid = profile(MAGIC, VERSION, 2, new Record('I', "seek_bar", 7),
+				new Record('I', "color", 0xff102030));
+		assertMalformed(profile(0x12345678, VERSION, 1, new Record('I', "seek_bar", 7)));
+		assertMalformed(profile(MAGIC, VERSION + 1, 1, new Record('I', "seek_bar", 7)));
+		assertMalformed(Arrays.copyOf(valid, valid.length - 1));
+		assertMalformed(Arrays.copyOf(valid, 3));
+		assertMalformed(profile(MAGIC, VERSION, 3, new Record('I', "seek_bar", 7),
+				new Record('I', "color", 0xff102030)));
+		assertMalformed(profile(MAGIC, VERSION, 2, new Record('I', "seek_bar", 7),
+				new Record('L', "color", 0xff102030)));
+		assertMalformed(profile(MAGIC, VERSION, 2, new Record('I', "seek_bar", 7),
+				new Record('I', "seek_bar", 8)));
+		final byte[] trailing = Arrays.copyOf(valid, valid.length + 1);
+		assertMalformed(trailing);
+
+		// The same records are applied once well formed.
+		assertEquals(2, PreferenceProfiles.restore(mScreen, valid, null));
+		assertEquals(7, mSeekBar.getValue());
+	}
+
+	private void assertMalformed(byte[] profile) {
+
+		final int editorCommits = mPreferences.commitCount;
+		final CountingListener listener = new CountingListener();
+		try {
+			PreferenceProfiles.restore(mScreen, profile, listener);
+			fail("Restored a malformed profile");
+		} catch (IOException expected) {
+		}
+		PreferenceWriteBatcher.flush();
+		assertEquals(50, mSeekBar.getValue());
+		assertEquals(0xff336699, mColor.getValue());
+		assertEquals(0, mPreferences.commitCount - editorCommits);
+		assertEquals(0, listener.count);
+	}
+
+	private static byte[] profile(int magic, int version, int count, Record... records) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(magic);
+		out.writeShort(version);
+		out.writeInt(count);
+		for (Record record : records) {
+			out.writeByte(record.type);
+			out.writeUTF(record.key);
+			out.writeInt(record.value);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static AttributeSet buildAttributeSet(String key, String defaultValue) {
+		return Robolectric.buildAttributeSet()
+				.addAttribute(android.R.attr.key, key)
+				.addAttribute(android.R.attr.title, key)
+				.addAttribute(android.R.attr.defaultValue, defaultValue)
+				.build();
+	}
+
+	/**
+	 * Activity whose preferences are kept in memory, since the file backed
+	 * implementation can't load in the test runtime.
+	 */
+	public static class TestPreferenceActivity extends PreferenceActivity {
+
+		final InMemorySharedPreferences mPreferences = new InMemorySharedPreferences();
+
+		@Override
+		public SharedPreferences getSharedPreferences(String name, int mode) {
+			return mPreferences;
+		}
+	}
+
+	private static final class CountingListener implements PreferenceProfiles.OnProfileAppliedListener {
+
+		int count;
+		List<Preference> changed;
+
+		@Override
+		public void onProfileApplied(List<Preference> changed) {
+			count++;
+			this.changed = changed;
+		}
+	}
+
+	private static final class Record {
+
+		final int type;
+		final String key;
+		final int value;
+
+		Record(int type, String key, int value) {
+			this.type = type;
+			this.key = key;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.preference.Preference;
+import android.preference.PreferenceActivity;
+import android.preference.PreferenceScreen;
+import android.util.AttributeSet;
+import android.widget.FrameLayout;
+import android.widget.ListAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Inflating and binding a screen must not write anything, whether the values
+ * are still the defaults or were stored before. Only defaults set with
+ * {@link Preference#setDefaultValue(Object)} are written, once.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceScreenInflationWriteTest {
+
+	private static final int PREFERENCE_COUNT = 500;
+
+	private PreferenceActivity mActivity;
+	private SharedPreferences mPreferences;
+	private int mChangeCount;
+
+	private final OnSharedPreferenceChangeListener mChangeListener = new OnSharedPreferenceChangeListener() {
+
+		@Override
+		public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+			mChangeCount++;
+		}
+	};
+
+	@Before
+	@SuppressWarnings("deprecation")
+	public void setUp() {
+
+		mActivity = Robolectric.buildActivity(TestPreferenceActivity.class).setup().get();
+		mPreferences = mActivity.getPreferenceManager().getSharedPreferences();
+		PreferenceWriteBatcher.flush();
+	}
+
+	@After
+	public void tearDown() {
+
+		mPreferences.unregisterOnSharedPreferenceChangeListener(mChangeListener);
+	}
+
+	@Test
+	public void inflatingDefaultsWritesNothing() {
+
+		assertInflatesWithoutWrites();
+	}
+
+	@Test
+	public void inflatingStoredValuesWritesNothing() {
+
+		final SharedPreferences.Editor editor = mPreferences.edit();
+		for (int i = 0; i < PREFERENCE_COUNT; i++) {
+			switch (i % 3) {
+				case 0:
+					editor.putInt(getKey(i), 0xff102030 + i);
+					break;
+				case 1:
+					editor.putInt(getKey(i), i % 100);
+					break;
+				default:
+					editor.putFloat(getKey(i), 1 + i % 10 * 0.1f);
+					break;
+			}
+		}
+		editor.commit();
+
+		final PreferenceScreen screen = assertInflatesWithoutWrites();
+		assertEquals(0xff102030 + 3, ((ColorPickerPreference) screen.getPreference(3)).getValue());
+		assertEquals(4, ((SeekBarPreference) screen.getPreference(4)).getValue());
+		assertEquals(1.5f, ((TextSizePreference) screen.getPreference(5)).getValue(), 0);
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void programmaticDefaultsAreWrittenOnce() {
+
+		final int editorCommits = ((InMemorySharedPreferences) mPreferences).commitCount;
+		PreferenceScreen screen = mActivity.getPreferenceManager().createPreferenceScreen(mActivity);
+		final SeekBarPreference seekBar = new SeekBarPreference(mActivity, buildAttributeSet(1, "50"));
+		seekBar.setDefaultValue(30);
+		final TextSizePreference textSize = new TextSizePreference(mActivity, buildAttributeSet(2, "1.0"));
+		textSize.setDefaultValue(1.5f);
+		screen.addPreference(seekBar);
+		screen.addPreference(textSize);
+		mActivity.setPreferenceScreen(screen);
+		PreferenceWriteBatcher.flush();
+
+		assertEquals(30, seekBar.getValue());
+		assertEquals(1.5f, textSize.getValue(), 0);
+		assertEquals(30, mPreferences.getInt(getKey(1), -1));
+		assertEquals(1.5f, mPreferences.getFloat(getKey(2), -1), 0);
+		assertEquals(1, ((InMemorySharedPreferences) mPreferences).commitCount - editorCommits);
+
+		// The stored value is restored, not overwritten by a new default.
+		screen = mActivity.getPreferenceManager().createPreferenceScreen(mActivity);
+		final SeekBarPreference again = new SeekBarPreference(mActivity, buildAttributeSet(1, "50"));
+		again.setDefaultValue(40);
+		screen.addPreference(again);
+		mActivity.setPreferenceScreen(screen);
+		PreferenceWriteBatcher.flush();
+		assertEquals(30, again.getValue());
+		assertEquals(1, ((InMemorySharedPreferences) mPreferences).commitCount - editorCommits);
+	}
+
+	@SuppressWarnings("deprecation")
+	private PreferenceScreen assertInflatesWithoutWrites() {
+
+		final int writes = PreferenceWriteBatcher.getWriteCount();
+		final int commits = PreferenceWriteBatcher.getCommitCount();
+		final int editorCommits = ((InMemorySharedPreferences) mPreferences).commitCount;
+		mPreferences.registerOnSharedPreferenceChangeListener(mChangeListener);
+
+		final PreferenceScreen screen = mActivity.getPreferenceManager().createPreferenceScreen(mActivity);
+		for (int i = 0; i < PREFERENCE_COUNT; i++) {
+			screen.addPreference(inflate(i));
+		}
+		mActivity.setPreferenceScreen(screen);
+		final ListAdapter adapter = screen.getRootAdapter();
+		final FrameLayout parent = new FrameLayout(mActivity);
+		for (int i = 0, j = adapter.getCount(); i < j; i++) {
+			adapter.getView(i, null, parent);
+		}
+		PreferenceWriteBatcher.flush();
+
+		assertEquals(PREFERENCE_COUNT, screen.getPreferenceCount());
+		assertEquals(0, PreferenceWriteBatcher.getWriteCount() - writes);
+		assertEquals(0, PreferenceWriteBatcher.getCommitCount() - commits);
+		assertEquals(0, ((InMemorySharedPreferences) mPreferences).commitCount - editorCommits);
+		assertEquals(0, mChangeCount);
+		return screen;
+	}
+
+	/**
+	 * Create a preference the way the inflater does, from XML attributes.
+	 */
+	private Preference inflate(int i) {
+
+		final AttributeSet attrs;
+		switch (i % 3) {
+			case 0:
+				attrs = buildAttributeSet(i, "#ff336699");
+				return new ColorPickerPreference(mActivity, attrs);
+			case 1:
+				attrs = buildAttributeSet(i, "50");
+				return new SeekBarPreference(mActivity, attrs);
+			default:
+				attrs = buildAttributeSet(i, "1.0");
+				return new TextSizePreference(mActivity, attrs);
+		}
+	}
+
+	private static AttributeSet buildAttributeSet(int i, String defaultValue) {
+		return Robolectric.buildAttributeSet()
+				.addAttribute(android.R.attr.key, getKey(i))
+				.addAttribute(android.R.attr.title, "Preference " + i)
+				.addAttribute(android.R.attr.defaultValue, defaultValue)
+				.build();
+	}
+
+	private static String getKey(int i) {
+		return "preference_" + i;
+	}
+
+	/**
+	 * Activity whose preferences are kept in memory, since the file backed
+	 * implementation can't load in the test runtime.
+	 */
+	public static class TestPreferenceActivity extends PreferenceActivity {
+
+		private final InMemorySharedPreferences mPreferences = new InMemorySharedPreferences();
+
+		@Override
+		public SharedPreferences getSharedPreferences(String name, int mode) {
+			return mPreferences;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+/**
+ * Values written through {@link PreferenceWriteBatcher} are visible through
+ * their storage at once, and only written by one delayed transaction. Runs on API 21, the first framework
+ * whose SharedPreferences load in the test runtime.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21)
+public class PreferenceWriteBatcherTest {
+
+	private Context mContext;
+	private SharedPreferences mPreferences;
+	private int mChangeCount;
+
+	private final OnSharedPreferenceChangeListener mChangeListener = new OnSharedPreferenceChangeListener() {
+
+		@Override
+		public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+			mChangeCount++;
+		}
+	};
+
+	@Before
+	public void setUp() {
+
+		mContext = RuntimeEnvironment.application;
+		mPreferences = mContext.getSharedPreferences("batcher", Context.MODE_PRIVATE);
+		mPreferences.registerOnSharedPreferenceChangeListener(mChangeListener);
+		PreferenceWriteBatcher.flush();
+	}
+
+	@After
+	public void tearDown() {
+
+		mPreferences.unregisterOnSharedPreferenceChangeListener(mChangeListener);
+	}
+
+	@Test
+	public void pendingValuesAreVisibleThroughStorage() {
+
+		final PreferenceStorage storage = SharedPreferencesStorage.get(mPreferences);
+		final int commits = PreferenceWriteBatcher.getCommitCount();
+		PreferenceWriteBatcher.putInt(mContext, storage, "int", 42);
+		PreferenceWriteBatcher.putFloat(mContext, storage, "float", 1.5f);
+
+		assertEquals(42, storage.getInt("int", 0));
+		assertEquals(1.5f, storage.getFloat("float", 0), 0);
+		// Nothing reaches the SharedPreferences before the flush.
+		assertFalse(mPreferences.contains("int"));
+		assertEquals(0, mChangeCount);
+		assertEquals(0, PreferenceWriteBatcher.getCommitCount() - commits);
+
+		PreferenceWriteBatcher.flush();
+		assertEquals(1, PreferenceWriteBatcher.getCommitCount() - commits);
+		assertEquals(42, mPreferences.getInt("int", 0));
+		assertEquals(1.5f, mPreferences.getFloat("float", 0), 0);
+		assertEquals(2, mChangeCount);
+	}
+
+	@Test
+	public void batchedValuesShareOneEditorTransaction() {
+
+		final InMemorySharedPreferences preferences = new InMemorySharedPreferences();
+		preferences.registerOnSharedPreferenceChangeListener(mChangeListener);
+		final PreferenceStorage storage = SharedPreferencesStorage.get(preferences);
+		final CountingStorageListener storageListener = new CountingStorageListener();
+		storage.registerOnChangeListener(storageListener);
+		PreferenceWriteBatcher.putInt(mContext, storage, "first", 1);
+		PreferenceWriteBatcher.putInt(mContext, storage, "second", 2);
+		PreferenceWriteBatcher.putInt(mContext, storage, "first", 3);
+
+		assertEquals(3, storage.getInt("first", 0));
+		assertEquals(0, preferences.commitCount);
+		assertEquals(0, mChangeCount);
+		// Storage listeners hear of every applied value at once.
+		assertEquals(3, storageListener.count);
+
+		PreferenceWriteBatcher.flush();
+		assertEquals(1, preferences.commitCount);
+		assertEquals(3, preferences.getInt("first", 0));
+		assertEquals(2, preferences.getInt("second", 0));
+		// One callback per changed key, and none repeated to the storage
+		// listeners.
+		assertEquals(2, mChangeCount);
+		assertEquals(3, storageListener.count);
+		storage.unregisterOnChangeListener(storageListener);
+	}
+
+	@Test
+	public void pendingValuesAreVisibleInMappedLog() throws IOException {
+
+		final File file = new File(mContext.getDir("batcher", Context.MODE_PRIVATE), "batcher.log");
+		final MappedLogStorage storage = MappedLogStorage.get(file);
+		final int commits = PreferenceWriteBatcher.getCommitCount();
+		PreferenceWriteBatcher.putInt(mContext, storage, "int", 42);
+
+		assertEquals(42, storage.getInt("int", 0));
+		assertEquals(0, PreferenceWriteBatcher.getCommitCount() - commits);
+		final int logSize = storage.getLogSize();
+
+		PreferenceWriteBatcher.flush();
+		assertEquals(1, PreferenceWriteBatcher.getCommitCount() - commits);
+		assertEquals(42, storage.getInt("int", 0));
+		assertTrue(storage.getLogSize() > logSize);
+	}
+
+	@Test
+	public void stoppingActivityWritesPendingValuesInBackground() throws InterruptedException {
+
+		final ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).setup();
+		final InMemorySharedPreferences preferences = new InMemorySharedPreferences();
+		final PreferenceStorage storage = SharedPreferencesStorage.get(preferences);
+		final int commits = PreferenceWriteBatcher.getCommitCount();
+		PreferenceWriteBatcher.putInt(controller.get(), storage, "stopped", 7);
+
+		controller.pause();
+		controller.stop();
+		// onStop returns without waiting for the disk.
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (PreferenceWriteBatcher.getCommitCount() == commits && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, PreferenceWriteBatcher.getCommitCount() - commits);
+		assertEquals(1, preferences.commitCount);
+		assertEquals(7, preferences.getInt("stopped", 0));
+	}
+
+	@Test
+	public void trimmingMemoryInBackgroundWritesPendingValues() {
+
+		final InMemorySharedPreferences preferences = new InMemorySharedPreferences();
+		final PreferenceStorage storage = SharedPreferencesStorage.get(preferences);
+		PreferenceWriteBatcher.putInt(mContext, storage, "trimmed", 7);
+
+		RuntimeEnvironment.application.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+		// Written before onTrimMemory returns.
+		assertEquals(1, preferences.commitCount);
+		assertEquals(7, preferences.getInt("trimmed", 0));
+	}
+
+	private static final class CountingStorageListener implements PreferenceStorage.OnChangeListener {
+
+		int count;
+
+		@Override
+		public void onStorageChanged(PreferenceStorage storage, String key) {
+			count++;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ProgressMappingTest {
+
+	private static final int STEPS = ProgressMapping.TEXT_SIZE_STEPS;
+
+	@Test
+	public void intValuesRoundTrip() {
+		for (int value = 10; value <= 200; value++) {
+			final int progress = ProgressMapping.toProgress(value, 10, 200);
+			assertEquals(value, ProgressMapping.fromProgress(progress, 10));
+		}
+	}
+
+	@Test
+	public void intValuesAreClamped() {
+		assertEquals(0, ProgressMapping.toProgress(5, 10, 200));
+		assertEquals(190, ProgressMapping.toProgress(500, 10, 200));
+	}
+
+	@Test
+	public void floatValuesRoundToTheNearestStep() {
+		// 12.3f - 12f is slightly below 0.3, truncating gives 2 steps.
+		assertEquals(3, ProgressMapping.toProgress(12.3f, 12f, 32f, STEPS));
+		assertEquals(3, ProgressMapping.toProgress(12.34f, 12f, 32f, STEPS));
+		assertEquals(4, ProgressMapping.toProgress(12.36f, 12f, 32f, STEPS));
+	}
+
+	@Test
+	public void floatValuesRoundTrip() {
+		for (int progress = 0; progress <= ProgressMapping.getMaxProgress(8.7f, 32.3f, STEPS); progress++) {
+			final float value = ProgressMapping.fromProgress(progress, 8.7f, STEPS);
+			assertEquals(progress, ProgressMapping.toProgress(value, 8.7f, 32.3f, STEPS));
+		}
+	}
+
+	@Test
+	public void floatValuesAreClamped() {
+		assertEquals(0, ProgressMapping.toProgress(1f, 8f, 32f, STEPS));
+		assertEquals(240, ProgressMapping.toProgress(40f, 8f, 32f, STEPS));
+	}
+
+	@Test
+	public void maxProgressRoundsToTheNearestStep() {
+		assertEquals(236, ProgressMapping.getMaxProgress(8.7f, 32.3f, STEPS));
+	}
+}
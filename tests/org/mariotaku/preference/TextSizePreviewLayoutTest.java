@@ -0,0 +1,111 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.preference.Preference.OnPreferenceClickListener;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import android.widget.SeekBar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowDialog;
+
+/**
+ * Dragging the text size redraws the preview of the dialog without measuring
+ * or laying it out again, or any other view of the dialog content.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TextSizePreviewLayoutTest {
+
+	private static final int WIDTH = 480, HEIGHT = 800;
+
+	private Activity mActivity;
+	private View mDecorView;
+	private Canvas mCanvas;
+
+	@Before
+	public void setUp() {
+
+		mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+		mCanvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Config.ARGB_8888));
+	}
+
+	@After
+	public void tearDown() {
+
+		DialogPool.release(mActivity);
+	}
+
+	@Test
+	public void dragRedrawsWithoutLayout() {
+
+		final TextSizePreference preference = new TextSizePreference(mActivity);
+		preference.setPersistent(false);
+		((OnPreferenceClickListener) preference).onPreferenceClick(preference);
+		Robolectric.flushForegroundThreadScheduler();
+		mDecorView = ShadowDialog.getLatestDialog().getWindow().getDecorView();
+		final TextSizePreviewView preview = find(mDecorView, TextSizePreviewView.class);
+		final SeekBar seekBar = find(mDecorView, SeekBar.class);
+		assertNotNull(preview);
+		assertNotNull(seekBar);
+		runFrame(preview);
+		assertTrue(preview.getLayoutCount() > 0);
+
+		// The value text next to the preview changes on every step too, and
+		// would relayout the whole content of the dialog if it requested a
+		// layout.
+		final View content = (View) preview.getParent();
+		preview.resetCounters();
+		int contentLayoutCount = 0;
+		final int steps = seekBar.getMax() / 2;
+		for (int i = 1; i <= steps; i++) {
+			final float textSize = preview.getTextSize();
+			seekBar.setProgress(seekBar.getProgress() + 1);
+			assertTrue(preview.getTextSize() > textSize);
+			if (content.isLayoutRequested()) {
+				contentLayoutCount++;
+			}
+			runFrame(preview);
+		}
+		assertEquals(0, contentLayoutCount);
+		assertEquals(0, preview.getMeasureCount());
+		assertEquals(0, preview.getLayoutCount());
+		assertEquals(steps, preview.getFrameCount());
+	}
+
+	/**
+	 * Run a frame the way the view root would, since the test runtime doesn't
+	 * schedule traversals. Robolectric's View.draw doesn't call onDraw.
+	 */
+	private void runFrame(TextSizePreviewView preview) {
+
+		mDecorView.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.AT_MOST));
+		mDecorView.layout(0, 0, mDecorView.getMeasuredWidth(), mDecorView.getMeasuredHeight());
+		preview.onDraw(mCanvas);
+	}
+
+	private static <T extends View> T find(View view, Class<T> cls) {
+
+		if (cls.isInstance(view)) return cls.cast(view);
+		if (!(view instanceof ViewGroup)) return null;
+		final ViewGroup group = (ViewGroup) view;
+		for (int i = 0, j = group.getChildCount(); i < j; i++) {
+			final T found = find(group.getChildAt(i), cls);
+			if (found != null) return found;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,93 @@
+package org.mariotaku.preference;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ValueCacheInvalidatorTest {
+
+	@Test
+	public void storageListenerIsRemovedWithTheLastKey() {
+		final FakeStorage storage = new FakeStorage();
+		final CountingCallback first = new CountingCallback(), second = new CountingCallback();
+		ValueCacheInvalidator.register(storage, "first", first);
+		ValueCacheInvalidator.register(storage, "second", second);
+		assertEquals(1, storage.listeners.size());
+
+		storage.dispatch("first");
+		assertEquals(1, first.count);
+		assertEquals(0, second.count);
+
+		ValueCacheInvalidator.unregister(storage, "first", first);
+		assertEquals(1, storage.listeners.size());
+		ValueCacheInvalidator.unregister(storage, "second", second);
+		assertEquals(0, storage.listeners.size());
+
+		// Registering again listens to the storage again.
+		ValueCacheInvalidator.register(storage, "first", first);
+		assertEquals(1, storage.listeners.size());
+		storage.dispatch("first");
+		assertEquals(2, first.count);
+		ValueCacheInvalidator.unregister(storage, "first", first);
+		assertEquals(0, storage.listeners.size());
+	}
+
+	private static final class CountingCallback implements ValueCacheInvalidator.Callback {
+
+		int count;
+
+		@Override
+		public void onValueInvalidated() {
+			count++;
+		}
+	}
+
+	private static final class FakeStorage implements PreferenceStorage {
+
+		final ArrayList<OnChangeListener> listeners = new ArrayList<OnChangeListener>();
+
+		@Override
+		public void apply(String key, Object value) {
+
+		}
+
+		@Override
+		public boolean contains(String key) {
+			return false;
+		}
+
+		@Override
+		public float getFloat(String key, float defValue) {
+			return defValue;
+		}
+
+		@Override
+		public int getInt(String key, int defValue) {
+			return defValue;
+		}
+
+		@Override
+		public void registerOnChangeListener(OnChangeListener listener) {
+			listeners.add(listener);
+		}
+
+		@Override
+		public void unregisterOnChangeListener(OnChangeListener listener) {
+			listeners.remove(listener);
+		}
+
+		@Override
+		public boolean write(Map<String, Object> values) {
+			return true;
+		}
+
+		void dispatch(String key) {
+			for (OnChangeListener listener : new ArrayList<OnChangeListener>(listeners)) {
+				listener.onStorageChanged(this, key);
+			}
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Writes the reference table of ColorMathTest: the results of
+ * android.graphics.Color.colorToHSV and Color.HSVToColor, whose native
+ * methods call SkRGBToHSV and SkHSVToColor. Both are copied below from
+ * Skia's src/core/SkColor.cpp as shipped with Android 4.x, with SkScalar
+ * being float.
+ *
+ *   cc -O2 -ffp-contract=off -o skcolor_golden tools/skcolor_golden.c -lm
+ *   ./skcolor_golden | gzip -9n > tests/org/mariotaku/preference/golden/skcolor.bin.gz
+ *
+ * The inputs are generated by ColorMathTest the same way.
+ */
+#include <math.h>
+#include <stdint.h>
+#include <stdio.h>
+
+typedef float SkScalar;
+typedef unsigned U8CPU;
+typedef uint32_t SkColor;
+
+#define SK_Scalar1 1.0f
+#define SK_ScalarNearlyZero (SK_Scalar1 / (1 << 12))
+#define SkIntToScalar(n) ((float) (n))
+#define SkScalarFloorToScalar(x) floorf(x)
+#define SkScalarRoundToInt(x) ((int) floorf((x) + 0.5f))
+#define SkScalarMul(a, b) ((SkScalar) (a) * (b))
+#define SkScalarDiv(a, b) ((SkScalar) (a) / (b))
+#define SkColorSetARGB(a, r, g, b) \
+	(((uint32_t) (a) << 24) | ((uint32_t) (r) << 16) | ((uint32_t) (g) << 8) | (uint32_t) (b))
+
+static inline unsigned SkMin32(unsigned a, unsigned b) {
+	return a < b ? a : b;
+}
+
+static inline unsigned SkMax32(unsigned a, unsigned b) {
+	return a > b ? a : b;
+}
+
+static inline SkScalar SkScalarPin(SkScalar x, SkScalar min, SkScalar max) {
+	return x < min ? min : x > max ? max : x;
+}
+
+static inline int SkScalarNearlyZero(SkScalar x) {
+	return fabsf(x) <= SK_ScalarNearlyZero;
+}
+
+static inline SkScalar ByteToScalar(U8CPU x) {
+	return SkScalarDiv(SkIntToScalar(x), 255);
+}
+
+static inline SkScalar ByteDivToScalar(int numer, U8CPU denom) {
+	// cast to keep the answer signed
+	return SkScalarDiv(SkIntToScalar(numer), (int) denom);
+}
+
+static void SkRGBToHSV(U8CPU r, U8CPU g, U8CPU b, SkScalar hsv[3]) {
+	unsigned min = SkMin32(r, SkMin32(g, b));
+	unsigned max = SkMax32(r, SkMax32(g, b));
+	unsigned delta = max - min;
+
+	SkScalar v = ByteToScalar(max);
+
+	if (0 == delta) { // we're a shade of gray
+		hsv[0] = 0;
+		hsv[1] = 0;
+		hsv[2] = v;
+		return;
+	}
+
+	SkScalar s = ByteDivToScalar(delta, max);
+
+	SkScalar h;
+	if (r == max) {
+		h = ByteDivToScalar(g - b, delta);
+	} else if (g == max) {
+		h = SkIntToScalar(2) + ByteDivToScalar(b - r, delta);
+	} else { // b == max
+		h = SkIntToScalar(4) + ByteDivToScalar(r - g, delta);
+	}
+
+	h *= 60;
+	if (h < 0) {
+		h += SkIntToScalar(360);
+	}
+
+	hsv[0] = h;
+	hsv[1] = s;
+	hsv[2] = v;
+}
+
+static SkColor SkHSVToColor(U8CPU a, const SkScalar hsv[3]) {
+	SkScalar s = SkScalarPin(hsv[1], 0, SK_Scalar1);
+	SkScalar v = SkScalarPin(hsv[2], 0, SK_Scalar1);
+
+	U8CPU v_byte = SkScalarRoundToInt(SkScalarMul(v, 255));
+
+	if (SkScalarNearlyZero(s)) { // shade of gray
+		return SkColorSetARGB(a, v_byte, v_byte, v_byte);
+	}
+	SkScalar hx = (hsv[0] < 0 || hsv[0] >= SkIntToScalar(360)) ? 0 : SkScalarDiv(hsv[0], 60);
+	SkScalar w = SkScalarFloorToScalar(hx);
+	SkScalar f = hx - w;
+
+	unsigned p = SkScalarRoundToInt(SkScalarMul(SK_Scalar1 - s, v) * 255);
+	unsigned q = SkScalarRoundToInt(SkScalarMul(SK_Scalar1 - SkScalarMul(s, f), v) * 255);
+	unsigned t = SkScalarRoundToInt(SkScalarMul(SK_Scalar1 - SkScalarMul(s, SK_Scalar1 - f), v) * 255);
+
+	unsigned r, g, b;
+
+	switch ((unsigned) (w)) {
+		case 0: r = v_byte; g = t;      b = p; break;
+		case 1: r = q;      g = v_byte; b = p; break;
+		case 2: r = p;      g = v_byte; b = t; break;
+		case 3: r = p;      g = q;      b = v_byte; break;
+		case 4: r = t;      g = p;      b = v_byte; break;
+		default: r = v_byte; g = p;     b = q; break;
+	}
+	return SkColorSetARGB(a, r, g, b);
+}
+
+static void writeInt(uint32_t x) {
+	putchar(x >> 24);
+	putchar(x >> 16 & 0xff);
+	putchar(x >> 8 & 0xff);
+	putchar(x & 0xff);
+}
+
+static void writeFloat(float f) {
+	union {
+		float f;
+		uint32_t i;
+	} bits;
+	bits.f = f;
+	writeInt(bits.i);
+}
+
+/*
+ * Same generator as ColorMathTest.Random.
+ */
+static uint32_t sSeed = 0x2545f491;
+
+static float nextFloat(void) {
+	sSeed = sSeed * 1664525u + 1013904223u;
+	return (float) (sSeed >> 8) / 16777216.0f;
+}
+
+int main(void) {
+	float hsv[3];
+	int i, r, g, b, h, s, v;
+	/* colorToHSV, for a grid of colors, then for random ones. */
+	for (r = 0; r <= 255; r += 15) {
+		for (g = 0; g <= 255; g += 15) {
+			for (b = 0; b <= 255; b += 15) {
+				SkRGBToHSV(r, g, b, hsv);
+				writeFloat(hsv[0]);
+				writeFloat(hsv[1]);
+				writeFloat(hsv[2]);
+			}
+		}
+	}
+	for (i = 0; i < 4096; i++) {
+		const uint32_t color = (uint32_t) (nextFloat() * 16777216.0f);
+		SkRGBToHSV(color >> 16 & 0xff, color >> 8 & 0xff, color & 0xff, hsv);
+		writeFloat(hsv[0]);
+		writeFloat(hsv[1]);
+		writeFloat(hsv[2]);
+	}
+	/* HSVToColor, for a grid of hues, saturations and values, then for
+	 * random ones, some of them out of range. */
+	for (h = -1; h <= 72; h++) {
+		for (s = 0; s <= 20; s++) {
+			for (v = 0; v <= 20; v++) {
+				hsv[0] = h * 5.0f;
+				hsv[1] = s / 20.0f;
+				hsv[2] = v / 20.0f;
+				writeInt(SkHSVToColor(0x80, hsv));
+			}
+		}
+	}
+	for (i = 0; i < 16384; i++) {
+		hsv[0] = -10.0f + 380.0f * nextFloat();
+		hsv[1] = -0.1f + 1.2f * nextFloat();
+		hsv[2] = -0.1f + 1.2f * nextFloat();
+		writeInt(SkHSVToColor(0x80, hsv));
+	}
+	return 0;
+}